@@ -0,0 +1,87 @@
+package pl.dexbtyes.shopapp.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+import pl.dexbtyes.shopapp.ShopappApplication;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.service.OrderService;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and pricing orders through {@link OrderService} against an in-memory H2 database seeded with
+ * {@code orders} orders of two items each. {@code getOrderById} is measured with the priced order cache disabled and
+ * with a cache that holds every order, both are measured with the promotion memo disabled and with a memo that holds
+ * the five cart compositions of the orders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dlogging.level.root=WARN")
+public class OrderAssemblyBenchmark {
+    @Param({"1000", "10000"})
+    int orders;
+    @Param({"0", "10000"})
+    int cacheSize;
+    @Param({"0", "10000"})
+    int memoSize;
+    ConfigurableApplicationContext context;
+    OrderService orderService;
+    SplittableRandom random;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(ShopappApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.r2dbc.url=r2dbc:h2:mem:///benchmark",
+                        "spring.flyway.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "shopapp.orders.cache.maximum-size=" + cacheSize,
+                        "shopapp.promotions.memo.maximum-size=" + memoSize
+                )
+                .run();
+        context.getBean(DatabaseClient.class)
+                .sql("""
+                        INSERT INTO order_items (product_id, order_id, quantity)
+                        SELECT MOD(X, 2) + 1, X / 2, 1 + MOD(X, 5) FROM SYSTEM_RANGE(0, :rows - 1)
+                        """)
+                .bind("rows", orders * 2)
+                .then()
+                .block();
+        orderService = context.getBean(OrderService.class);
+        random = new SplittableRandom(42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Order getOrderById() {
+        return orderService.getOrderById(random.nextInt(orders)).block();
+    }
+
+    @Benchmark
+    public List<Order> getOrders() {
+        return orderService.getOrders().collectList().block();
+    }
+}
@@ -0,0 +1,64 @@
+package pl.dexbtyes.shopapp.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Totals of an already priced order, computed on every serialization of {@link Order}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingBenchmark {
+    @Param({"1", "10", "100"})
+    int lineItems;
+    Order order;
+
+    @Setup
+    public void setUp() {
+        Product apple = new Product(50, "apple");
+        Product orange = new Product(70, "orange");
+        order = new Order(1, new ArrayList<>());
+        for (int i = 0; i < lineItems; i++) {
+            order.addItem(i % 2 == 0
+                    ? new LineItem(apple, 4 + i, 30, (4 + i) / 2)
+                    : LineItem.builder().product(orange).quantity(3 + i).build());
+        }
+    }
+
+    @Benchmark
+    public int orderTotal() {
+        return order.getOrderTotal();
+    }
+
+    /**
+     * The same sum as {@link #orderTotal()} without the stream, to tell the cost of {@link LineItem#getTotal()} apart
+     * from the cost of summing.
+     */
+    @Benchmark
+    public int lineItemTotals() {
+        int total = 0;
+        for (LineItem item : order.items()) {
+            total += item.getTotal();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,69 @@
+package pl.dexbtyes.shopapp.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties.SessionMode;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+import pl.dexbtyes.shopapp.service.JavaPromotionEngine;
+import pl.dexbtyes.shopapp.service.PromotionEngine;
+import pl.dexbtyes.shopapp.service.RuleSessions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pricing of a single order, the body of {@code OrderService.applyPromotions}, by Drools in every session mode and by
+ * {@link JavaPromotionEngine}. Every invocation builds a fresh order because the promotions modify it, that allocation
+ * is part of the reported rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogging.level.root=WARN")
+public class RulesBenchmark {
+    @Param({"NEW", "POOLED", "STATELESS", "JAVA"})
+    String engine;
+    @Param({"2", "50"})
+    int quantity;
+    PromotionEngine promotionEngine;
+    Product apple;
+    Product orange;
+    List<Product> products;
+
+    @Setup
+    public void setUp() {
+        if (engine.equals("JAVA")) {
+            promotionEngine = new JavaPromotionEngine();
+        } else {
+            RulesProperties properties = new RulesProperties(SessionMode.valueOf(engine), 8, true);
+            promotionEngine = new RuleSessions(new OrderRulesEngine().kieBase(properties), properties, new SimpleMeterRegistry());
+        }
+        apple = new Product(50, "apple");
+        orange = new Product(70, "orange");
+        products = List.of(apple, orange);
+    }
+
+    @Benchmark
+    public Order applyPromotions() {
+        Order order = new Order(1, new ArrayList<>());
+        order.addQuantity(apple, quantity);
+        order.addQuantity(orange, quantity);
+        return promotionEngine.execute(order, products);
+    }
+}
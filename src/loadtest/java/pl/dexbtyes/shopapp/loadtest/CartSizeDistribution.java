@@ -0,0 +1,95 @@
+package pl.dexbtyes.shopapp.loadtest;
+
+import java.util.SplittableRandom;
+
+/**
+ * Number of units a simulated customer puts into the cart with one {@code add} request.
+ * <ul>
+ *     <li>{@code fixed:N} - always {@code N}</li>
+ *     <li>{@code uniform:MIN-MAX} - uniformly distributed between {@code MIN} and {@code MAX} inclusive</li>
+ *     <li>{@code geometric:MEAN} - mostly small carts with a long tail, at least one unit</li>
+ * </ul>
+ */
+public interface CartSizeDistribution {
+
+    int next(SplittableRandom random);
+
+    String spec();
+
+    static CartSizeDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected fixed:N, uniform:MIN-MAX or geometric:MEAN but got '" + spec + "'");
+        }
+        return switch (parts[0]) {
+            case "fixed" -> fixed(Integer.parseInt(parts[1]));
+            case "uniform" -> {
+                String[] bounds = parts[1].split("-");
+                yield uniform(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]));
+            }
+            case "geometric" -> geometric(Double.parseDouble(parts[1]));
+            default -> throw new IllegalArgumentException("Unknown cart size distribution '" + parts[0] + "'");
+        };
+    }
+
+    static CartSizeDistribution fixed(int size) {
+        requirePositive(size);
+        return new CartSizeDistribution() {
+            @Override
+            public int next(SplittableRandom random) {
+                return size;
+            }
+
+            @Override
+            public String spec() {
+                return "fixed:" + size;
+            }
+        };
+    }
+
+    static CartSizeDistribution uniform(int min, int max) {
+        requirePositive(min);
+        if (max < min) {
+            throw new IllegalArgumentException("Cart size range " + min + "-" + max + " is empty");
+        }
+        return new CartSizeDistribution() {
+            @Override
+            public int next(SplittableRandom random) {
+                return random.nextInt(min, max + 1);
+            }
+
+            @Override
+            public String spec() {
+                return "uniform:" + min + "-" + max;
+            }
+        };
+    }
+
+    static CartSizeDistribution geometric(double mean) {
+        if (mean < 1) {
+            throw new IllegalArgumentException("Mean cart size must be at least 1 but was " + mean);
+        }
+        double p = 1 / mean;
+        return new CartSizeDistribution() {
+            @Override
+            public int next(SplittableRandom random) {
+                if (p == 1) {
+                    return 1;
+                }
+                double draw = Math.ceil(Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+                return (int) Math.max(1, Math.min(Integer.MAX_VALUE, draw));
+            }
+
+            @Override
+            public String spec() {
+                return "geometric:" + mean;
+            }
+        };
+    }
+
+    private static void requirePositive(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Cart size must be positive but was " + size);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package pl.dexbtyes.shopapp.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import pl.dexbtyes.shopapp.ShopappApplication;
+import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.entity.ProductEntity;
+import pl.dexbtyes.shopapp.loadtest.LoadTestSettings.Operation;
+import pl.dexbtyes.shopapp.repository.ProductRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Open-loop HTTP load generator for {@code OrderController}.
+ * <p>
+ * Starts the application on a random port and sends a seeded, reproducible mix of {@code add},
+ * {@code getOrderSummary}, {@code getOrderIds} and {@code getOrders} requests at a fixed rate. Requests are scheduled
+ * independently of the responses and latency is measured from the moment a request was due, not from the moment it
+ * was sent, so a slow server shows up as latency instead of silently lowering the rate. Run it with
+ * {@code ./gradlew loadTest}, see {@link LoadTestSettings} for the parameters.
+ */
+public class LoadTest {
+    private static final Duration TICK = Duration.ofMillis(1);
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final int PREFILL_CONCURRENCY = 16;
+
+    private final LoadTestSettings settings;
+    private final WebClient webClient;
+    private final List<Long> productIds;
+    private final SplittableRandom random;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+
+    LoadTest(LoadTestSettings settings, WebClient webClient, List<Long> productIds) {
+        this.settings = settings;
+        this.webClient = webClient;
+        this.productIds = productIds;
+        this.random = new SplittableRandom(settings.seed());
+        this.operations = settings.mix().keySet().toArray(Operation[]::new);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += settings.mix().get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        for (Operation operation : operations) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ShopappApplication.class)
+                .properties("server.port=0")
+                .run(args);
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(settings.maxInFlight())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            WebClient webClient = WebClient.builder()
+                    .baseUrl("http://localhost:" + port + "/orders/v1")
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                    .build();
+            List<Long> productIds = context.getBean(ProductRepository.class)
+                    .findAll()
+                    .map(ProductEntity::id)
+                    .collectList()
+                    .block();
+            LoadTest loadTest = new LoadTest(settings, webClient, productIds);
+            loadTest.prefill();
+            Map<String, Object> report = loadTest.run();
+            report.put("build", buildInfo(context));
+            loadTest.write(report);
+        } finally {
+            connections.dispose();
+            context.close();
+        }
+    }
+
+    /**
+     * Creates every order up front so that summaries never hit an order that does not exist yet.
+     */
+    void prefill() {
+        System.out.printf("Creating %d orders%n", settings.orders());
+        Flux.range(1, settings.orders())
+                .map(orderId -> new Request(Operation.ADD, orderId, nextProductId(), settings.cartSize().next(random), 0))
+                .flatMap(this::send, PREFILL_CONCURRENCY)
+                .blockLast();
+    }
+
+    Map<String, Object> run() {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / settings.rate();
+        long start = System.nanoTime();
+        long measureStart = start + settings.warmup().toNanos();
+        long end = measureStart + settings.duration().toNanos();
+        long total = (end - start) / intervalNanos;
+        AtomicLong scheduled = new AtomicLong();
+        System.out.printf("Sending %d requests/s for %s (warmup %s)%n", settings.rate(), settings.duration(), settings.warmup());
+
+        Flux.interval(TICK)
+                .onBackpressureDrop()
+                .takeUntil(tick -> scheduled.get() >= total)
+                .concatMapIterable(tick -> {
+                    long due = Math.min(total, (System.nanoTime() - start) / intervalNanos + 1);
+                    List<Request> requests = new ArrayList<>();
+                    for (long next = scheduled.get(); next < due; next = scheduled.incrementAndGet()) {
+                        requests.add(nextRequest(start + next * intervalNanos));
+                    }
+                    return requests;
+                })
+                .flatMap(request -> send(request)
+                        .doOnSuccess(ok -> {
+                            if (request.dueNanos() >= measureStart) {
+                                stats.get(request.operation()).record(System.nanoTime() - request.dueNanos(), ok);
+                            }
+                        }), settings.maxInFlight())
+                .blockLast();
+
+        return report(Duration.ofNanos(end - measureStart));
+    }
+
+    private Request nextRequest(long dueNanos) {
+        int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = 0;
+        while (draw >= cumulativeWeights[index]) {
+            index++;
+        }
+        Operation operation = operations[index];
+        long orderId = 1 + random.nextInt(settings.orders());
+        return operation == Operation.ADD
+                ? new Request(operation, orderId, nextProductId(), settings.cartSize().next(random), dueNanos)
+                : new Request(operation, orderId, 0, 0, dueNanos);
+    }
+
+    private long nextProductId() {
+        return productIds.get(random.nextInt(productIds.size()));
+    }
+
+    /**
+     * Sends a request and reads the whole response, emits whether it succeeded. {@code add} reports failures in the
+     * {@link Status} body rather than in the HTTP status.
+     */
+    private Mono<Boolean> send(Request request) {
+        Mono<Boolean> response = switch (request.operation()) {
+            case ADD -> webClient.put()
+                    .uri(uri -> uri.path("/add/{orderId}")
+                            .queryParam("productId", request.productId())
+                            .queryParam("quantity", request.quantity())
+                            .build(request.orderId()))
+                    .retrieve()
+                    .bodyToMono(Status.class)
+                    .map(status -> HttpStatus.valueOf(status.code()).is2xxSuccessful());
+            case SUMMARY -> drain(webClient.get()
+                    .uri("/getOrderSummary/{orderId}", request.orderId()));
+            case ORDER_IDS -> drain(webClient.get()
+                    .uri(uri -> uri.path("/getOrderIds").queryParam("size", 100).build()));
+            case ORDERS -> drain(webClient.get()
+                    .uri("/getOrders"));
+        };
+        return response.onErrorReturn(false);
+    }
+
+    private static Mono<Boolean> drain(WebClient.RequestHeadersSpec<?> spec) {
+        return spec.retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .doOnNext(DataBufferUtils::release)
+                .then(Mono.just(true));
+    }
+
+    private Map<String, Object> report(Duration measured) {
+        double seconds = measured.toNanos() / 1e9;
+        Histogram all = new Histogram(HIGHEST_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+        long errors = 0;
+        Map<String, Object> operationsReport = new LinkedHashMap<>();
+        System.out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats operationStats = entry.getValue();
+            all.add(operationStats.latencies);
+            errors += operationStats.errors.sum();
+            operationsReport.put(entry.getKey().key(), summary(operationStats.latencies, operationStats.errors.sum(), seconds));
+            print(entry.getKey().key(), operationStats.latencies, operationStats.errors.sum(), seconds);
+        }
+        print("total", all, errors, seconds);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("rate", settings.rate());
+        parameters.put("warmup", settings.warmup().toString());
+        parameters.put("duration", settings.duration().toString());
+        parameters.put("mix", mixSpec());
+        parameters.put("cartSize", settings.cartSize().spec());
+        parameters.put("orders", settings.orders());
+        parameters.put("maxInFlight", settings.maxInFlight());
+        parameters.put("seed", settings.seed());
+        report.put("settings", parameters);
+        Map<String, Object> environment = new LinkedHashMap<>();
+        environment.put("javaVersion", System.getProperty("java.version"));
+        environment.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        environment.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        report.put("environment", environment);
+        report.put("total", summary(all, errors, seconds));
+        report.put("operations", operationsReport);
+        return report;
+    }
+
+    private static Map<String, Object> summary(Histogram latencies, long errors, double seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", latencies.getTotalCount());
+        summary.put("errors", errors);
+        summary.put("throughput", latencies.getTotalCount() / seconds);
+        Map<String, Object> millis = new LinkedHashMap<>();
+        millis.put("mean", latencies.getMean() / 1000);
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99}) {
+            millis.put("p" + (percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile)),
+                    latencies.getValueAtPercentile(percentile) / 1000.0);
+        }
+        millis.put("max", latencies.getMaxValue() / 1000.0);
+        summary.put("latencyMillis", millis);
+        return summary;
+    }
+
+    private static void print(String name, Histogram latencies, long errors, double seconds) {
+        System.out.printf("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                name, latencies.getTotalCount(), errors, latencies.getTotalCount() / seconds,
+                latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+                latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMaxValue() / 1000.0);
+    }
+
+    private String mixSpec() {
+        List<String> weights = new ArrayList<>();
+        settings.mix().forEach((operation, weight) -> weights.add(operation.key() + ":" + weight));
+        return String.join(",", weights);
+    }
+
+    private static Map<String, Object> buildInfo(ConfigurableApplicationContext context) {
+        BuildProperties build = context.getBeanProvider(BuildProperties.class).getIfAvailable();
+        Map<String, Object> info = new LinkedHashMap<>();
+        if (build != null) {
+            info.put("version", build.getVersion());
+            info.put("time", String.valueOf(build.getTime()));
+        }
+        return info;
+    }
+
+    void write(Map<String, Object> report) throws IOException {
+        Files.createDirectories(settings.report().toAbsolutePath().getParent());
+        new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(settings.report().toFile(), report);
+        System.out.printf("Report written to %s%n", settings.report().toAbsolutePath());
+    }
+
+    record Request(Operation operation, long orderId, long productId, int quantity, long dueNanos) {
+    }
+
+    static final class OperationStats {
+        final Histogram latencies = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+        final LongAdder errors = new LongAdder();
+
+        void record(long latencyNanos, boolean ok) {
+            latencies.recordValue(Math.min(HIGHEST_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+            if (!ok) {
+                errors.increment();
+            }
+        }
+    }
+}
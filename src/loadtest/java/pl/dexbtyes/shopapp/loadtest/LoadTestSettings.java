@@ -0,0 +1,102 @@
+package pl.dexbtyes.shopapp.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Load test parameters, read from {@code loadtest.*} system properties so that a run can be repeated exactly by
+ * passing the same values (they are copied into the report).
+ *
+ * @param rate        requests per second over all operations, scheduled open-loop
+ * @param warmup      time the traffic runs before latencies are recorded
+ * @param duration    measured time
+ * @param mix         relative weight of every operation
+ * @param cartSize    units added to an order by a single {@code add} request
+ * @param orders      number of orders the traffic is spread over, all of them are created before the warmup
+ * @param maxInFlight upper bound of concurrent requests, requests over it wait and the wait counts as latency
+ * @param seed        seed of the traffic generator
+ * @param report      JSON report location
+ */
+public record LoadTestSettings(
+        int rate,
+        Duration warmup,
+        Duration duration,
+        Map<Operation, Integer> mix,
+        CartSizeDistribution cartSize,
+        int orders,
+        int maxInFlight,
+        long seed,
+        Path report
+) {
+    static final String PREFIX = "loadtest.";
+
+    public static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.parseInt(property("rate", "100")),
+                Duration.parse(property("warmup", "PT10S")),
+                Duration.parse(property("duration", "PT60S")),
+                parseMix(property("mix", "add:60,summary:30,orderIds:9,orders:1")),
+                CartSizeDistribution.parse(property("cartSize", "uniform:1-5")),
+                Integer.parseInt(property("orders", "500")),
+                Integer.parseInt(property("maxInFlight", "256")),
+                Long.parseLong(property("seed", "42")),
+                Path.of(property("report", "build/reports/loadtest/report.json"))
+        );
+    }
+
+    /**
+     * Parses {@code operation:weight} pairs, e.g. {@code add:60,summary:30,orderIds:9,orders:1}. Operations that are
+     * not listed are not sent.
+     */
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight but got '" + entry + "'");
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + pair[0]);
+            }
+            weights.put(Operation.fromKey(pair[0].trim()), weight);
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("Operation mix '" + mix + "' has no positive weight");
+        }
+        return weights;
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(PREFIX + name, defaultValue);
+    }
+
+    public enum Operation {
+        ADD("add"),
+        SUMMARY("summary"),
+        ORDER_IDS("orderIds"),
+        ORDERS("orders");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        static Operation fromKey(String key) {
+            return Arrays.stream(values())
+                    .filter(operation -> operation.key.equalsIgnoreCase(key))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown operation '" + key + "', expected one of "
+                            + Arrays.stream(values()).map(Operation::key).collect(Collectors.joining(", "))));
+        }
+    }
+}
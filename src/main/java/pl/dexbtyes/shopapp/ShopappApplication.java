@@ -2,14 +2,41 @@ package pl.dexbtyes.shopapp;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import pl.dexbtyes.shopapp.configuration.AdmissionProperties;
+import pl.dexbtyes.shopapp.configuration.IdempotencyProperties;
+import pl.dexbtyes.shopapp.configuration.OrderCacheProperties;
+import pl.dexbtyes.shopapp.configuration.PricingProperties;
+import pl.dexbtyes.shopapp.configuration.PromotionMemoProperties;
+import pl.dexbtyes.shopapp.configuration.WriteBehindProperties;
 
 @SpringBootApplication
 @EnableR2dbcRepositories
+@EnableScheduling
+@EnableConfigurationProperties({OrderCacheProperties.class, PricingProperties.class, PromotionMemoProperties.class,
+		WriteBehindProperties.class, IdempotencyProperties.class, AdmissionProperties.class})
 public class ShopappApplication {
+	/**
+	 * Startup steps kept for the {@code startup} actuator endpoint, enough for every bean of the application.
+	 */
+	static final int STARTUP_STEPS = 8192;
+	/**
+	 * System property making the application exit as soon as it started, used by the training run that records the
+	 * class data sharing archive of the Docker image.
+	 */
+	static final String CDS_TRAINING_PROPERTY = "shopapp.cds.training";
 
 	public static void main(String[] args) {
-		SpringApplication.run(ShopappApplication.class, args);
+		SpringApplication application = new SpringApplication(ShopappApplication.class);
+		application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+		ConfigurableApplicationContext context = application.run(args);
+		if (Boolean.getBoolean(CDS_TRAINING_PROPERTY)) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
@@ -0,0 +1,35 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the admission control of order requests in {@code shopapp.admission.*}.
+ *
+ * @param enabled whether requests over the concurrency limits are rejected
+ * @param write   limit of the requests adding products to orders
+ * @param pricing limit of the requests pricing single orders or pages of orders
+ * @param listing limit of the requests listing or streaming all orders, kept apart because their response time
+ *                grows with the number of orders
+ */
+@ConfigurationProperties("shopapp.admission")
+public record AdmissionProperties(@DefaultValue("false") boolean enabled,
+                                  @DefaultValue Limit write,
+                                  @DefaultValue Limit pricing,
+                                  @DefaultValue Limit listing) {
+
+    /**
+     * @param initialLimit     number of concurrent requests admitted at startup
+     * @param minLimit         lowest number of concurrent requests the limit backs off to
+     * @param maxLimit         highest number of concurrent requests the limit grows to
+     * @param latencyThreshold time to the first byte of the response over which a request counts as a sign of
+     *                         overload
+     */
+    public record Limit(@DefaultValue("32") int initialLimit,
+                        @DefaultValue("1") int minLimit,
+                        @DefaultValue("256") int maxLimit,
+                        @DefaultValue("PT0.5S") Duration latencyThreshold) {
+    }
+}
@@ -0,0 +1,17 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the store of idempotent requests in {@code shopapp.orders.idempotency.*}.
+ *
+ * @param maximumSize      number of idempotency keys remembered, {@code 0} makes every request run again
+ * @param expireAfterWrite time after which a key is forgotten and a request with it runs again
+ */
+@ConfigurationProperties("shopapp.orders.idempotency")
+public record IdempotencyProperties(@DefaultValue("100000") long maximumSize,
+                                    @DefaultValue("PT1H") Duration expireAfterWrite) {
+}
@@ -0,0 +1,21 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the long lived per order rule sessions in {@code shopapp.rules.incremental.*}.
+ *
+ * @param enabled          whether single orders are priced by a session kept per order that only evaluates the items
+ *                         added since it was last priced
+ * @param maximumCartItems number of cart items held by all sessions together, the least recently used sessions are
+ *                         disposed over it. A session holds a fact per cart item, so this bounds their memory
+ * @param idleTimeout      time after which the session of an order that is neither priced nor changed is disposed
+ */
+@ConfigurationProperties("shopapp.rules.incremental")
+public record IncrementalRulesProperties(@DefaultValue("false") boolean enabled,
+                                         @DefaultValue("10000") long maximumCartItems,
+                                         @DefaultValue("PT5M") Duration idleTimeout) {
+}
@@ -2,24 +2,37 @@ package pl.dexbtyes.shopapp.configuration;
 
 import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.instrument.config.MeterFilter;
 import io.micrometer.core.instrument.config.NamingConvention;
 import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Configuration
 @Slf4j
 public class MicrometerConfig {
+    static final String R2DBC_POOL_ACQUIRE = "r2dbc.pool.acquire";
     private final BuildProperties buildProperties;
 
     @Autowired
@@ -35,9 +48,43 @@ public class MicrometerConfig {
                 .namingConvention(new PrometheusMetricsNamingConvention(buildProperties));
     }
 
+    /**
+     * Times every connection acquisition from the R2DBC pools. Their acquired, idle and pending gauges are
+     * published by the Spring Boot pool metrics.
+     */
+    @Bean
+    static BeanPostProcessor connectionPoolAcquireMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ConnectionPool connectionPool) {
+                    return new TimedConnectionFactory(connectionPool, meterRegistry.getObject(), beanName);
+                }
+                return bean;
+            }
+        };
+    }
+
     protected static class MicrometerFilter implements MeterFilter {
         @Override
         public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+            if (id.getName().equals(R2DBC_POOL_ACQUIRE)) {
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(false)
+                        .percentiles(0.5, 0.9, 0.99)
+                        .serviceLevelObjectives(
+                                (double) Duration.ofMillis(1).toNanos(),
+                                (double) Duration.ofMillis(5).toNanos(),
+                                (double) Duration.ofMillis(10).toNanos(),
+                                (double) Duration.ofMillis(50).toNanos(),
+                                (double) Duration.ofMillis(100).toNanos(),
+                                (double) Duration.ofMillis(500).toNanos(),
+                                (double) Duration.ofSeconds(1).toNanos(),
+                                (double) Duration.ofSeconds(5).toNanos()
+                        )
+                        .build()
+                        .merge(config);
+            }
             if (id.getName().equals("http.server.requests")) {
                 return DistributionStatisticConfig.builder()
                         .percentilesHistogram(false)
@@ -62,6 +109,56 @@ public class MicrometerConfig {
         }
     }
 
+    protected static class TimedConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+        private final ConnectionFactory delegate;
+        private final Timer acquired;
+        private final Timer failed;
+
+        public TimedConnectionFactory(ConnectionFactory delegate, MeterRegistry meterRegistry, String name) {
+            this.delegate = delegate;
+            this.acquired = Timer.builder(R2DBC_POOL_ACQUIRE)
+                    .tag("name", name)
+                    .tag("outcome", "success")
+                    .register(meterRegistry);
+            this.failed = Timer.builder(R2DBC_POOL_ACQUIRE)
+                    .tag("name", name)
+                    .tag("outcome", "failure")
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public Publisher<? extends Connection> create() {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return Mono.<Connection>from(delegate.create())
+                        .doOnSuccess(connection -> acquired.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                        .doOnError(throwable -> failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+            });
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return delegate.getMetadata();
+        }
+
+        @Override
+        public ConnectionFactory unwrap() {
+            return delegate;
+        }
+
+        @Override
+        public void dispose() {
+            if (delegate instanceof Disposable disposable) {
+                disposable.dispose();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return delegate instanceof Disposable disposable && disposable.isDisposed();
+        }
+    }
+
     protected static class PrometheusMetricsNamingConvention implements NamingConvention {
 
         private static final String REGEX = "([^a-zA-Z0-9])";
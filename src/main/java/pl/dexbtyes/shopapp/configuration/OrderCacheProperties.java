@@ -0,0 +1,17 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the priced order cache in {@code shopapp.orders.cache.*}.
+ *
+ * @param maximumSize      number of priced orders kept, {@code 0} disables the cache
+ * @param expireAfterWrite time after which a priced order is evicted even if its order did not change
+ */
+@ConfigurationProperties("shopapp.orders.cache")
+public record OrderCacheProperties(@DefaultValue("10000") long maximumSize,
+                                   @DefaultValue("PT10M") Duration expireAfterWrite) {
+}
@@ -1,30 +1,131 @@
 package pl.dexbtyes.shopapp.configuration;
 
+import lombok.extern.log4j.Log4j2;
+import org.drools.model.Model;
+import org.drools.modelcompiler.KieBaseBuilder;
+import org.kie.api.KieBase;
 import org.kie.api.KieServices;
 import org.kie.api.builder.KieBuilder;
 import org.kie.api.builder.KieFileSystem;
 import org.kie.api.builder.KieModule;
-import org.kie.api.runtime.KieContainer;
+import org.kie.api.builder.Message;
 import org.kie.internal.io.ResourceFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import pl.dexbtyes.shopapp.service.PromotionEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Configuration
 @ComponentScan("pl.dexbytes.shopapp.service")
+@EnableConfigurationProperties({RulesProperties.class, IncrementalRulesProperties.class, RuleReloadProperties.class})
+@Log4j2
 public class OrderRulesEngine {
     public static final String ORDER_CONFIG = "pl/dexbytes/shopapp/rules/orders.drl";
+    /**
+     * Index of the executable model classes generated from {@link #ORDER_CONFIG} by the {@code compileRuleBase} task.
+     */
+    public static final String ORDER_MODEL = "pl/dexbytes/shopapp/rules/orders.model";
+
+    /**
+     * Truth maintained variant of {@link #ORDER_CONFIG} executed by long lived per order sessions, see
+     * {@code IncrementalRuleSessions}.
+     */
+    public static final String INCREMENTAL_ORDER_CONFIG = "pl/dexbytes/shopapp/rules/incremental/orders.drl";
+    public static final String INCREMENTAL_ORDER_MODEL = "pl/dexbytes/shopapp/rules/incremental/orders.model";
+    private static final String RESOURCES_ROOT = "src/main/resources/";
 
     @Bean
-    public KieContainer kieContainer() {
+    @ConditionalOnProperty(name = PromotionEngine.ENGINE_PROPERTY, havingValue = "drools", matchIfMissing = true)
+    public KieBase kieBase(RulesProperties properties) {
+        return loadRuleBase(ORDER_CONFIG, ORDER_MODEL, properties.precompiled());
+    }
+
+    /**
+     * Loads the executable model generated from {@code drl} at build time, or compiles {@code drl} when the model is
+     * not precompiled or missing.
+     */
+    public static KieBase loadRuleBase(String drl, String model, boolean precompiled) {
+        long start = System.nanoTime();
+        ClassPathResource modelIndex = new ClassPathResource(model);
+        KieBase kieBase;
+        String source;
+        if (precompiled && modelIndex.exists()) {
+            kieBase = loadExecutableModel(modelIndex);
+            source = model;
+        } else {
+            if (precompiled) {
+                log.warn("Executable model {} not found on the classpath, compiling {} at startup", model, drl);
+            }
+            kieBase = compileDrl(drl);
+            source = drl;
+        }
+        log.info("Rule base loaded from {} in {} ms", source, (System.nanoTime() - start) / 1_000_000);
+        return kieBase;
+    }
+
+    static KieBase compileDrl() {
+        return compileDrl(ORDER_CONFIG);
+    }
+
+    static KieBase compileDrl(String drl) {
         KieServices kieServices = KieServices.Factory.get();
 
         KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
-        kieFileSystem.write(ResourceFactory.newClassPathResource(ORDER_CONFIG));
+        kieFileSystem.write(ResourceFactory.newClassPathResource(drl));
+        return build(kieServices, kieFileSystem);
+    }
+
+    /**
+     * Compiles the promotion rules from DRL source that is not on the classpath, e.g. rules uploaded at runtime.
+     *
+     * @throws IllegalArgumentException with the compiler messages when {@code drl} does not compile
+     */
+    public static KieBase compileRules(String drl) {
+        KieServices kieServices = KieServices.Factory.get();
+
+        KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+        kieFileSystem.write(RESOURCES_ROOT + ORDER_CONFIG, drl);
+        return build(kieServices, kieFileSystem);
+    }
+
+    private static KieBase build(KieServices kieServices, KieFileSystem kieFileSystem) {
         KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
         kieBuilder.buildAll();
+        List<Message> errors = kieBuilder.getResults().getMessages(Message.Level.ERROR);
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(errors.stream()
+                    .map(Message::getText)
+                    .collect(Collectors.joining("; ")));
+        }
         KieModule kieModule = kieBuilder.getKieModule();
 
-        return kieServices.newKieContainer(kieModule.getReleaseId());
+        return kieServices.newKieContainer(kieModule.getReleaseId()).getKieBase();
+    }
+
+    static KieBase loadExecutableModel(ClassPathResource modelIndex) {
+        try (InputStream inputStream = modelIndex.getInputStream()) {
+            List<String> modelClasses = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .filter(line -> !line.isBlank())
+                    .toList();
+            List<Model> models = new ArrayList<>(modelClasses.size());
+            for (String modelClass : modelClasses) {
+                models.add((Model) Class.forName(modelClass, true, OrderRulesEngine.class.getClassLoader())
+                        .getConstructor()
+                        .newInstance());
+            }
+            return KieBaseBuilder.createKieBaseFromModel(models);
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load executable model " + modelIndex.getPath(), e);
+        }
     }
 }
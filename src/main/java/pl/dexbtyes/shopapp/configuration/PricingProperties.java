@@ -0,0 +1,19 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the scheduler promotions are evaluated on, in {@code shopapp.pricing.*}.
+ *
+ * @param threads       number of threads evaluating promotions, {@code 0} means one per available processor
+ * @param queueCapacity number of orders waiting for a thread, orders over it are rejected with 503
+ */
+@ConfigurationProperties("shopapp.pricing")
+public record PricingProperties(@DefaultValue("0") int threads,
+                                @DefaultValue("256") int queueCapacity) {
+
+    public int effectiveThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,15 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the memo of promotion results per cart composition, in {@code shopapp.promotions.memo.*}.
+ *
+ * @param maximumSize number of cart compositions kept, {@code 0} disables the memo
+ * @param maximumLines carts with more lines than this are always evaluated, large carts rarely repeat
+ */
+@ConfigurationProperties("shopapp.promotions.memo")
+public record PromotionMemoProperties(@DefaultValue("10000") long maximumSize,
+                                      @DefaultValue("8") int maximumLines) {
+}
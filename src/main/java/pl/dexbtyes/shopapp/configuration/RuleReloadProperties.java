@@ -0,0 +1,16 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of replacing the promotion rules at runtime in {@code shopapp.rules.reload.*}.
+ *
+ * @param enabled      whether the {@code admin/v1/rules} endpoint accepting new rules is exposed, it executes the
+ *                     uploaded code so it must only be reachable by operators
+ * @param warmupOrders number of sample orders the new rules price before they replace the current ones
+ */
+@ConfigurationProperties("shopapp.rules.reload")
+public record RuleReloadProperties(@DefaultValue("false") boolean enabled,
+                                   @DefaultValue("1000") int warmupOrders) {
+}
@@ -0,0 +1,32 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the Drools execution in {@code shopapp.rules.*}.
+ *
+ * @param sessionMode how a session is obtained for every priced order
+ * @param poolSize    initial number of sessions kept by the pool in {@link SessionMode#POOLED} mode
+ * @param precompiled whether the executable model generated at build time is used instead of compiling the DRL
+ */
+@ConfigurationProperties("shopapp.rules")
+public record RulesProperties(@DefaultValue("POOLED") SessionMode sessionMode,
+                              @DefaultValue("8") int poolSize,
+                              @DefaultValue("true") boolean precompiled) {
+
+    public enum SessionMode {
+        /**
+         * A new stateful session is built and disposed for every order.
+         */
+        NEW,
+        /**
+         * Stateful sessions are borrowed from a pool and reset when they are returned.
+         */
+        POOLED,
+        /**
+         * Orders are executed in a stateless session as a single batch of commands.
+         */
+        STATELESS
+    }
+}
@@ -0,0 +1,28 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.kie.api.KieBase;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pl.dexbtyes.shopapp.service.IncrementalRuleSessions;
+import pl.dexbtyes.shopapp.service.PricingScheduler;
+import pl.dexbtyes.shopapp.service.ProductCatalog;
+import pl.dexbtyes.shopapp.service.PromotionEngine;
+
+@Configuration
+public class StartupConfig {
+
+    /**
+     * Beans created at startup even with {@code spring.main.lazy-initialization=true}: the rule base and everything
+     * pricing runs on, so that the first order does not pay for loading the rules, the catalog which refreshes on a
+     * schedule, and Flyway, so that the schema exists before the first query. The springdoc scan, the order service and
+     * caches, actuator endpoints and the rest are created on first use.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerPricingBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(KieBase.class, PromotionEngine.class,
+                IncrementalRuleSessions.class, PricingScheduler.class, ProductCatalog.class,
+                FlywayMigrationInitializer.class);
+    }
+}
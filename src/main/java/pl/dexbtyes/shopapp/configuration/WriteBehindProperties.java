@@ -0,0 +1,23 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the write-behind buffer of added order items in {@code shopapp.orders.write-behind.*}.
+ *
+ * @param enabled              whether adds are buffered and written in batches instead of one write per add
+ * @param maximumPendingItems  number of buffered order items that triggers a flush before {@code flush-interval}
+ * @param maximumBufferedItems number of buffered order items from which adds are rejected, e.g. while writes fail
+ * @param flushInterval        time after which buffered items are written at the latest
+ * @param shutdownTimeout      time the application waits for buffered items to be written when it stops
+ */
+@ConfigurationProperties("shopapp.orders.write-behind")
+public record WriteBehindProperties(@DefaultValue("false") boolean enabled,
+                                    @DefaultValue("1000") int maximumPendingItems,
+                                    @DefaultValue("10000") int maximumBufferedItems,
+                                    @DefaultValue("PT0.1S") Duration flushInterval,
+                                    @DefaultValue("PT10S") Duration shutdownTimeout) {
+}
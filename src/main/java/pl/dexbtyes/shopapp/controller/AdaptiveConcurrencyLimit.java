@@ -0,0 +1,74 @@
+package pl.dexbtyes.shopapp.controller;
+
+import pl.dexbtyes.shopapp.configuration.AdmissionProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit adjusted with additive increase and multiplicative decrease (AIMD).
+ * <p>
+ * Every request that completes within the latency threshold while the limit is at least half used raises the limit
+ * by one, every request that is slower or failed because of overload lowers it by {@value #BACKOFF_RATIO}, always
+ * within {@code min-limit} and {@code max-limit}.
+ */
+class AdaptiveConcurrencyLimit {
+    static final double BACKOFF_RATIO = 0.9;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    AdaptiveConcurrencyLimit(AdmissionProperties.Limit properties) {
+        this.minLimit = Math.max(1, properties.minLimit());
+        this.maxLimit = Math.max(minLimit, properties.maxLimit());
+        this.latencyThresholdNanos = properties.latencyThreshold().toNanos();
+        this.limit = Math.min(maxLimit, Math.max(minLimit, properties.initialLimit()));
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return whether the request is admitted, it must then be released exactly once
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request and adjusts the limit to its outcome.
+     */
+    void release(long latencyNanos, boolean overloaded) {
+        int current = inFlight.getAndDecrement();
+        adjust(current, overloaded || latencyNanos > latencyThresholdNanos);
+    }
+
+    /**
+     * Releases an admitted request without a usable outcome, e.g. one cancelled by the client.
+     */
+    void releaseIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void adjust(int inFlight, boolean dropped) {
+        if (dropped) {
+            limit = Math.max(minLimit, (int) (limit * BACKOFF_RATIO));
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+}
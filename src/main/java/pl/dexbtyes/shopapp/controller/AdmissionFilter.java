@@ -0,0 +1,135 @@
+package pl.dexbtyes.shopapp.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import pl.dexbtyes.shopapp.configuration.AdmissionProperties;
+import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.exception.ControllerAdvisor;
+import pl.dexbtyes.shopapp.exception.RequestRejectedException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control of {@link OrderController}, enabled by {@code shopapp.admission.enabled}.
+ * <p>
+ * Requests adding items, requests pricing single orders or pages and requests listing all orders are admitted by
+ * separate {@link AdaptiveConcurrencyLimit}s, so a burst of one kind does not starve the others. Listings are kept
+ * apart because they hold their slot for as long as the client reads them. A request over its limit is rejected
+ * before it reaches the controller with the 503 response of {@link ControllerAdvisor#overloaded}. Order ids, the
+ * rules admin endpoint and actuator are never limited.
+ * <p>
+ * A request counts as slow when its response is committed later than the latency threshold, the time spent writing
+ * the body depends on its size and on the client rather than on the load of the server. The limits are published as
+ * {@code admission.limit}, {@code admission.in-flight} and {@code admission.rejected}, tagged with
+ * {@code limit=write|pricing|listing}.
+ */
+@Component
+@ConditionalOnProperty(name = "shopapp.admission.enabled", havingValue = "true")
+@Log4j2
+public class AdmissionFilter implements WebFilter {
+    static final String WRITE = "write";
+    static final String PRICING = "pricing";
+    static final String LISTING = "listing";
+    private static final PathPatternParser PARSER = PathPatternParser.defaultInstance;
+    private final List<Route> routes;
+    private final ObjectMapper objectMapper;
+
+    public AdmissionFilter(AdmissionProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        Admission write = new Admission(WRITE, new AdaptiveConcurrencyLimit(properties.write()), meterRegistry);
+        Admission pricing = new Admission(PRICING, new AdaptiveConcurrencyLimit(properties.pricing()), meterRegistry);
+        Admission listing = new Admission(LISTING, new AdaptiveConcurrencyLimit(properties.listing()), meterRegistry);
+        this.routes = List.of(
+                new Route(HttpMethod.PUT, PARSER.parse("/orders/v1/add/{orderId}"), write),
+                new Route(HttpMethod.PUT, PARSER.parse("/orders/v1/addAll/{orderId}"), write),
+                new Route(HttpMethod.GET, PARSER.parse("/orders/v1/getOrders"), listing),
+                new Route(HttpMethod.GET, PARSER.parse("/orders/v1/getOrdersPage"), pricing),
+                new Route(HttpMethod.GET, PARSER.parse("/orders/v1/streamOrders"), listing),
+                new Route(HttpMethod.GET, PARSER.parse("/orders/v1/getOrderSummary/{orderId}"), pricing)
+        );
+        log.info("Admitting at most {} write, {} pricing and {} listing requests at once", properties.write().maxLimit(),
+                properties.pricing().maxLimit(), properties.listing().maxLimit());
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        Admission admission = admission(exchange);
+        if (admission == null) {
+            return chain.filter(exchange);
+        }
+        if (!admission.limit().tryAcquire()) {
+            admission.rejected().increment();
+            return reject(exchange.getResponse(), admission.name());
+        }
+        long start = System.nanoTime();
+        AtomicLong latency = new AtomicLong(-1);
+        exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() ->
+                latency.compareAndSet(-1, System.nanoTime() - start)));
+        return chain.filter(exchange)
+                .doOnSuccess(done -> release(admission, exchange, start, latency, false))
+                .doOnError(error -> release(admission, exchange, start, latency, true))
+                .doOnCancel(() -> admission.limit().releaseIgnored());
+    }
+
+    private static void release(Admission admission, ServerWebExchange exchange, long start, AtomicLong latency,
+                                boolean failed) {
+        latency.compareAndSet(-1, System.nanoTime() - start);
+        boolean overloaded = failed || HttpStatus.SERVICE_UNAVAILABLE.equals(exchange.getResponse().getStatusCode());
+        admission.limit().release(latency.get(), overloaded);
+    }
+
+    private Admission admission(ServerWebExchange exchange) {
+        HttpMethod method = exchange.getRequest().getMethod();
+        var path = exchange.getRequest().getPath().pathWithinApplication();
+        for (Route route : routes) {
+            if (route.method().equals(method) && route.pattern().matches(path)) {
+                return route.admission();
+            }
+        }
+        return null;
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, String limit) {
+        ResponseEntity<Status> rejected = ControllerAdvisor.overloaded(new RequestRejectedException(limit));
+        response.setStatusCode(rejected.getStatusCode());
+        response.getHeaders().addAll(rejected.getHeaders());
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.fromCallable(() ->
+                response.bufferFactory().wrap(objectMapper.writeValueAsBytes(rejected.getBody()))));
+    }
+
+    private record Route(HttpMethod method, PathPattern pattern, Admission admission) {
+    }
+
+    private record Admission(String name, AdaptiveConcurrencyLimit limit, Counter rejected) {
+
+        Admission(String name, AdaptiveConcurrencyLimit limit, MeterRegistry meterRegistry) {
+            this(name, limit, Counter.builder("admission.rejected")
+                    .tag("limit", name)
+                    .register(meterRegistry));
+            Gauge.builder("admission.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .tag("limit", name)
+                    .register(meterRegistry);
+            Gauge.builder("admission.in-flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .tag("limit", name)
+                    .register(meterRegistry);
+        }
+    }
+}
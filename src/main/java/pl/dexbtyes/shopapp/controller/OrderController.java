@@ -1,35 +1,64 @@
 package pl.dexbtyes.shopapp.controller;
 
 import io.micrometer.core.annotation.Timed;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import pl.dexbtyes.shopapp.dto.CartLine;
 import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.OrderPage;
 import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.service.IdempotencyStore;
 import pl.dexbtyes.shopapp.service.OrderService;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("orders/v1")
 @Timed
 public class OrderController {
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
     final OrderService orderService;
+    final IdempotencyStore idempotencyStore;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, IdempotencyStore idempotencyStore) {
         this.orderService = orderService;
+        this.idempotencyStore = idempotencyStore;
     }
 
+    /**
+     * Adds the product to the order. A retry sent with the same {@value #IDEMPOTENCY_KEY} header gets the status of
+     * the first request and does not add the product again.
+     */
     @PutMapping("add/{orderId}")
     public Mono<Status> addProductToOrder(
             @PathVariable("orderId") long orderId,
             @RequestParam("productId") long productId,
-            @RequestParam(name = "quantity", defaultValue = "1", required = false) int quantity
+            @RequestParam(name = "quantity", defaultValue = "1", required = false) int quantity,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey
     ) {
-        return orderService.addItemsForOrder(orderId, productId, quantity);
+        if (idempotencyKey == null) {
+            return orderService.addItemsForOrder(orderId, productId, quantity);
+        }
+        return idempotencyStore.execute(idempotencyKey, new AddRequest(orderId, productId, quantity),
+                () -> orderService.addItemsForOrder(orderId, productId, quantity));
+    }
+
+    @PutMapping("addAll/{orderId}")
+    public Flux<Status> addProductsToOrder(
+            @PathVariable("orderId") long orderId,
+            @RequestBody List<CartLine> lines
+    ) {
+        return orderService.addItemsForOrder(orderId, lines);
     }
 
     @GetMapping("/getOrderIds")
-    public Flux<Long> getOrderIds() {
-        return getOrders().map(Order::id);
+    public Flux<Long> getOrderIds(
+            @RequestParam(name = "cursor", required = false) Long cursor,
+            @RequestParam(name = "size", required = false) Integer size
+    ) {
+        return orderService.getOrderIds(cursor, size);
     }
 
     @GetMapping("/getOrders")
@@ -37,8 +66,24 @@ public class OrderController {
         return orderService.getOrders();
     }
 
+    @GetMapping("/getOrdersPage")
+    public Mono<OrderPage> getOrdersPage(
+            @RequestParam(name = "cursor", required = false) Long cursor,
+            @RequestParam(name = "size", defaultValue = "50", required = false) int size
+    ) {
+        return orderService.getOrdersPage(cursor, size);
+    }
+
+    @GetMapping(value = "/streamOrders", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Order> streamOrders(@RequestParam(name = "cursor", required = false) Long cursor) {
+        return orderService.streamOrders(cursor);
+    }
+
     @GetMapping("/getOrderSummary/{orderId}")
     public Mono<Order> getOrderSummary(@PathVariable("orderId") long orderId) {
         return orderService.getOrderById(orderId);
     }
+
+    private record AddRequest(long orderId, long productId, int quantity) {
+    }
 }
@@ -0,0 +1,33 @@
+package pl.dexbtyes.shopapp.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.service.RuleBaseReloader;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("admin/v1/rules")
+@ConditionalOnProperty(name = RuleBaseReloader.RELOAD_PROPERTY, havingValue = "true")
+public class RulesAdminController {
+    final RuleBaseReloader ruleBaseReloader;
+
+    public RulesAdminController(RuleBaseReloader ruleBaseReloader) {
+        this.ruleBaseReloader = ruleBaseReloader;
+    }
+
+    @GetMapping
+    public Mono<Status> getRules() {
+        return ruleBaseReloader.current();
+    }
+
+    @PutMapping(consumes = MediaType.TEXT_PLAIN_VALUE)
+    public Mono<Status> replaceRules(@RequestBody String drl) {
+        return ruleBaseReloader.reload(drl);
+    }
+}
@@ -0,0 +1,36 @@
+package pl.dexbtyes.shopapp.dto;
+
+/**
+ * Units of a product in the cart of an order, the fact the incremental rules match on.
+ * <p>
+ * The quantity grows in place while the fact stays in its session, so equality is identity.
+ */
+public class CartItem {
+    private final Product product;
+    private int quantity;
+
+    public CartItem(Product product, int quantity) {
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void addQuantity(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        this.quantity += quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "CartItem(product=" + product + ", quantity=" + quantity + ")";
+    }
+}
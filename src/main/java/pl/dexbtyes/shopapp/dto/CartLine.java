@@ -0,0 +1,10 @@
+package pl.dexbtyes.shopapp.dto;
+
+/**
+ * Single line of a bulk add to an order.
+ *
+ * @param productId id of the product to add
+ * @param quantity  number of units to add
+ */
+public record CartLine(long productId, int quantity) {
+}
@@ -11,7 +11,16 @@ import lombok.NoArgsConstructor;
 @Builder
 public class LineItem {
     private Product product;
+    private int quantity;
     private int discount;
+    private int discountedQuantity;
+
+    public void setQuantity(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        this.quantity = quantity;
+    }
 
     public void setDiscount(int discount) {
         if (discount < 0 || discount > 100) {
@@ -20,7 +29,19 @@ public class LineItem {
         this.discount = discount;
     }
 
+    public void setDiscountedQuantity(int discountedQuantity) {
+        if (discountedQuantity < 0 || discountedQuantity > getQuantity()) {
+            throw new IllegalArgumentException("Discounted quantity has to be in range 0-" + getQuantity());
+        }
+        this.discountedQuantity = discountedQuantity;
+    }
+
+    public int getUndiscountedQuantity() {
+        return getQuantity() - getDiscountedQuantity();
+    }
+
     public int getTotal() {
-        return getProduct().basePrice() * (100 - getDiscount()) / 100;
+        int basePrice = getProduct().basePrice();
+        return getUndiscountedQuantity() * basePrice + getDiscountedQuantity() * (basePrice * (100 - getDiscount()) / 100);
     }
 }
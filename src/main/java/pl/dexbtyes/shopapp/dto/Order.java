@@ -14,6 +14,17 @@ public record Order(long id, List<LineItem> items) {
         return this;
     }
 
+    public Order addQuantity(Product product, int quantity) {
+        items.stream()
+                .filter(item -> item.getProduct().equals(product) && item.getDiscountedQuantity() == 0)
+                .findFirst()
+                .ifPresentOrElse(
+                        item -> item.setQuantity(item.getQuantity() + quantity),
+                        () -> items.add(LineItem.builder().product(product).quantity(quantity).build())
+                );
+        return this;
+    }
+
     public int getOrderTotal() {
         return items.stream().map(LineItem::getTotal)
                 .reduce(Integer::sum)
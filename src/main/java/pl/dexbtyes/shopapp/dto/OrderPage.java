@@ -0,0 +1,12 @@
+package pl.dexbtyes.shopapp.dto;
+
+import java.util.List;
+
+/**
+ * One page of orders sorted by id.
+ *
+ * @param orders     orders of the page
+ * @param nextCursor cursor to request the next page with, {@code null} when this is the last page
+ */
+public record OrderPage(List<Order> orders, Long nextCursor) {
+}
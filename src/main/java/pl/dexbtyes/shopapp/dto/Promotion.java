@@ -0,0 +1,14 @@
+package pl.dexbtyes.shopapp.dto;
+
+/**
+ * Promotion the incremental rules logically insert for a cart item, retracted by the engine as soon as the item no
+ * longer qualifies.
+ *
+ * @param item               item the promotion is granted for
+ * @param discount           percentage taken off the discounted units
+ * @param discountedQuantity number of discounted units
+ * @param extraItem          whether the discounted units are added to the order as a line of their own instead of
+ *                           being taken from {@code item}
+ */
+public record Promotion(CartItem item, int discount, int discountedQuantity, boolean extraItem) {
+}
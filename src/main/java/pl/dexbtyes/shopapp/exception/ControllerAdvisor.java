@@ -1,6 +1,8 @@
 package pl.dexbtyes.shopapp.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.reactive.result.method.annotation.ResponseEntityExceptionHandler;
@@ -9,12 +11,33 @@ import reactor.core.publisher.Mono;
 
 @RestControllerAdvice
 public class ControllerAdvisor extends ResponseEntityExceptionHandler {
+    private static final String RETRY_AFTER_SECONDS = "1";
 
-    @ExceptionHandler({ProductNotFoundException.class, QuantityTooLowException.class})
+    @ExceptionHandler({ProductNotFoundException.class, QuantityTooLowException.class, PageSizeOutOfRangeException.class,
+            RulesRejectedException.class, InvalidIdempotencyKeyException.class, IdempotencyKeyReusedException.class})
     private static Mono<Status> processException(Throwable throwable) {
         if (throwable instanceof ShopappException shopappException) {
             return Mono.just(new Status(shopappException.getCode(), shopappException.getMessage()));
         }
         return Mono.just(new Status(HttpStatus.INTERNAL_SERVER_ERROR.value(), throwable.getMessage()));
     }
+
+    /**
+     * Unlike validation errors, overload is reported in the HTTP status as well, so that clients and load balancers
+     * back off without parsing the body.
+     */
+    @ExceptionHandler({PricingOverloadedException.class, RequestRejectedException.class, WriteBufferFullException.class})
+    private static Mono<ResponseEntity<Status>> processOverload(ShopappException exception) {
+        return Mono.just(overloaded(exception));
+    }
+
+    /**
+     * Response to a request rejected because of overload, also written by the admission filter for requests it
+     * rejects before they reach a controller.
+     */
+    public static ResponseEntity<Status> overloaded(ShopappException exception) {
+        return ResponseEntity.status(exception.getCode())
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(new Status(exception.getCode(), exception.getMessage()));
+    }
 }
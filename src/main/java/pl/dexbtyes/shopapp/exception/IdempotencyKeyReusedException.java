@@ -0,0 +1,18 @@
+package pl.dexbtyes.shopapp.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class IdempotencyKeyReusedException extends ShopappException {
+    private static final int CODE = HttpStatus.UNPROCESSABLE_ENTITY.value();
+    private static final String MESSAGE = "Idempotency key was already used for another request";
+
+    @Override
+    public String getMessage() {
+        return MESSAGE;
+    }
+
+    @Override
+    public int getCode() {
+        return CODE;
+    }
+}
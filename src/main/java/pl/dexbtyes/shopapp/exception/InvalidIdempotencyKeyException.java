@@ -0,0 +1,23 @@
+package pl.dexbtyes.shopapp.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class InvalidIdempotencyKeyException extends ShopappException {
+    private static final int CODE = HttpStatus.BAD_REQUEST.value();
+    private static final String MESSAGE = "Idempotency key must have between 1 and %d characters";
+    private final int maxLength;
+
+    public InvalidIdempotencyKeyException(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public String getMessage() {
+        return MESSAGE.formatted(maxLength);
+    }
+
+    @Override
+    public int getCode() {
+        return CODE;
+    }
+}
@@ -0,0 +1,23 @@
+package pl.dexbtyes.shopapp.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class PageSizeOutOfRangeException extends ShopappException {
+    private static final int CODE = HttpStatus.BAD_REQUEST.value();
+    private static final String MESSAGE = "Page size must be between 1 and ";
+    private final int maxPageSize;
+
+    public PageSizeOutOfRangeException(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    @Override
+    public String getMessage() {
+        return MESSAGE + maxPageSize;
+    }
+
+    @Override
+    public int getCode() {
+        return CODE;
+    }
+}
@@ -0,0 +1,18 @@
+package pl.dexbtyes.shopapp.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class PricingOverloadedException extends ShopappException {
+    private static final int CODE = HttpStatus.SERVICE_UNAVAILABLE.value();
+    private static final String MESSAGE = "Too many orders are being priced, retry later";
+
+    @Override
+    public String getMessage() {
+        return MESSAGE;
+    }
+
+    @Override
+    public int getCode() {
+        return CODE;
+    }
+}
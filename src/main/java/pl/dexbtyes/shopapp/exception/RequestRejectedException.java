@@ -0,0 +1,23 @@
+package pl.dexbtyes.shopapp.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class RequestRejectedException extends ShopappException {
+    private static final int CODE = HttpStatus.SERVICE_UNAVAILABLE.value();
+    private static final String MESSAGE = "Too many %s requests in progress, retry later";
+    private final String limit;
+
+    public RequestRejectedException(String limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public String getMessage() {
+        return MESSAGE.formatted(limit);
+    }
+
+    @Override
+    public int getCode() {
+        return CODE;
+    }
+}
@@ -0,0 +1,23 @@
+package pl.dexbtyes.shopapp.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class RulesRejectedException extends ShopappException {
+    private static final int CODE = HttpStatus.BAD_REQUEST.value();
+    private static final String MESSAGE = "Rules rejected: ";
+    private final String reason;
+
+    public RulesRejectedException(String reason) {
+        this.reason = reason;
+    }
+
+    @Override
+    public String getMessage() {
+        return MESSAGE + reason;
+    }
+
+    @Override
+    public int getCode() {
+        return CODE;
+    }
+}
@@ -1,9 +1,56 @@
 package pl.dexbtyes.shopapp.repository;
 
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.dexbtyes.shopapp.entity.OrderItemsEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Repository
-public interface OrderItemsRepository extends R2dbcRepository<OrderItemsEntity, Long> {
+public interface OrderItemsRepository extends R2dbcRepository<OrderItemsEntity, Long>, OrderItemsRepositoryCustom {
+
+    /**
+     * Adds {@code quantity} to the item of the product in the order, creating the item when it does not exist yet.
+     * Two concurrent first adds can both take the insert branch, the loser fails on the unique key and may be retried.
+     */
+    @Modifying
+    @Query("""
+            MERGE INTO order_items t
+            USING (VALUES (CAST(:orderId AS BIGINT), CAST(:productId AS BIGINT), CAST(:quantity AS INT))) s (order_id, product_id, quantity)
+            ON t.order_id = s.order_id AND t.product_id = s.product_id
+            WHEN MATCHED THEN UPDATE SET quantity = t.quantity + s.quantity
+            WHEN NOT MATCHED THEN INSERT (order_id, product_id, quantity) VALUES (s.order_id, s.product_id, s.quantity)
+            """)
+    Mono<Integer> addQuantity(@Param("orderId") long orderId, @Param("productId") long productId,
+                              @Param("quantity") int quantity);
+
+    /**
+     * Items of the first {@code limit} orders with an id greater than {@code afterOrderId}, ordered by order id.
+     */
+    @Query("""
+            SELECT * FROM order_items
+            WHERE order_id IN (
+                SELECT DISTINCT order_id FROM order_items
+                WHERE order_id > :afterOrderId
+                ORDER BY order_id
+                LIMIT :limit
+            )
+            ORDER BY order_id, id
+            """)
+    Flux<OrderItemsEntity> findOrdersPage(@Param("afterOrderId") long afterOrderId, @Param("limit") int limit);
+
+    /**
+     * Ids of at most {@code limit} orders greater than {@code afterOrderId} in ascending order.
+     */
+    @Query("SELECT DISTINCT order_id FROM order_items WHERE order_id > :afterOrderId ORDER BY order_id LIMIT :limit")
+    Flux<Long> findOrderIds(@Param("afterOrderId") long afterOrderId, @Param("limit") int limit);
+
+    /**
+     * Items of all orders with an id greater than {@code afterOrderId}, ordered so that items of one order are adjacent.
+     */
+    @Query("SELECT * FROM order_items WHERE order_id > :afterOrderId ORDER BY order_id, id")
+    Flux<OrderItemsEntity> findOrdersAfter(@Param("afterOrderId") long afterOrderId);
 }
@@ -0,0 +1,24 @@
+package pl.dexbtyes.shopapp.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+public interface OrderItemsRepositoryCustom {
+
+    /**
+     * Adds quantities keyed by product id to the items of the order in one transaction, sending all upserts as a
+     * single batch.
+     *
+     * @return number of rows written
+     */
+    Mono<Long> addQuantities(long orderId, Map<Long, Integer> quantities);
+
+    /**
+     * Adds quantities keyed by order id and product id to the items of several orders in one transaction, sending all
+     * upserts as a single batch.
+     *
+     * @return number of rows written
+     */
+    Mono<Long> addAllQuantities(Map<Long, Map<Long, Integer>> quantities);
+}
@@ -0,0 +1,58 @@
+package pl.dexbtyes.shopapp.repository;
+
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+class OrderItemsRepositoryImpl implements OrderItemsRepositoryCustom {
+    private static final String ADD_QUANTITY = """
+            MERGE INTO order_items t
+            USING (VALUES (CAST($1 AS BIGINT), CAST($2 AS BIGINT), CAST($3 AS INT))) s (order_id, product_id, quantity)
+            ON t.order_id = s.order_id AND t.product_id = s.product_id
+            WHEN MATCHED THEN UPDATE SET quantity = t.quantity + s.quantity
+            WHEN NOT MATCHED THEN INSERT (order_id, product_id, quantity) VALUES (s.order_id, s.product_id, s.quantity)
+            """;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    OrderItemsRepositoryImpl(DatabaseClient databaseClient, TransactionalOperator transactionalOperator) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    @Override
+    public Mono<Long> addQuantities(long orderId, Map<Long, Integer> quantities) {
+        return addAllQuantities(Map.of(orderId, quantities));
+    }
+
+    @Override
+    public Mono<Long> addAllQuantities(Map<Long, Map<Long, Integer>> quantities) {
+        if (quantities.values().stream().allMatch(Map::isEmpty)) {
+            return Mono.just(0L);
+        }
+        return databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(ADD_QUANTITY);
+                    boolean first = true;
+                    for (Map.Entry<Long, Map<Long, Integer>> order : quantities.entrySet()) {
+                        for (Map.Entry<Long, Integer> quantity : order.getValue().entrySet()) {
+                            if (!first) {
+                                statement.add();
+                            }
+                            statement.bind(0, order.getKey())
+                                    .bind(1, quantity.getKey())
+                                    .bind(2, quantity.getValue());
+                            first = false;
+                        }
+                    }
+                    return Flux.from(statement.execute())
+                            .flatMap(Result::getRowsUpdated);
+                })
+                .reduce(0L, Long::sum)
+                .as(transactionalOperator::transactional);
+    }
+}
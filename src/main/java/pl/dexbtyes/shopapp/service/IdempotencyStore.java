@@ -0,0 +1,57 @@
+package pl.dexbtyes.shopapp.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.configuration.IdempotencyProperties;
+import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.exception.IdempotencyKeyReusedException;
+import pl.dexbtyes.shopapp.exception.InvalidIdempotencyKeyException;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * Bounded, expiring store of the results of requests sent with an {@code Idempotency-Key} header.
+ * <p>
+ * A request with a key seen before gets the stored status and does not run again, a request that is still running
+ * is shared with its retries. Failed requests are not stored, their retries run again. A key is bound to the request
+ * it was first sent with, reusing it for another request fails with {@link IdempotencyKeyReusedException}. Hits,
+ * misses and the number of keys are published by {@link CaffeineCacheMetrics} as cache {@value #CACHE_NAME}.
+ */
+@Component
+public class IdempotencyStore {
+    public static final int MAX_KEY_LENGTH = 255;
+    static final String CACHE_NAME = "orders.idempotency";
+    private final AsyncCache<String, Result> results;
+
+    public IdempotencyStore(IdempotencyProperties properties, MeterRegistry meterRegistry) {
+        this.results = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfterWrite(properties.expireAfterWrite())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, results, CACHE_NAME);
+    }
+
+    /**
+     * Returns the stored status of {@code key} or subscribes to {@code operation} once and stores its status.
+     *
+     * @param request the parameters of the request, compared to the ones the key was first sent with
+     */
+    public Mono<Status> execute(String key, Object request, Supplier<Mono<Status>> operation) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return Mono.error(new InvalidIdempotencyKeyException(MAX_KEY_LENGTH));
+        }
+        return Mono.defer(() -> Mono.fromFuture(results.get(key, (k, executor) -> operation.get()
+                                .map(status -> new Result(request, status))
+                                .toFuture()), true))
+                .flatMap(result -> result.request().equals(request) ? Mono.just(result.status())
+                        : Mono.error(new IdempotencyKeyReusedException()));
+    }
+
+    private record Result(Object request, Status status) {
+    }
+}
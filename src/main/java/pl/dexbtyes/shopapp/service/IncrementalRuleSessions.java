@@ -0,0 +1,341 @@
+package pl.dexbtyes.shopapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.kie.api.KieBase;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.configuration.IncrementalRulesProperties;
+import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.dto.CartItem;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+import pl.dexbtyes.shopapp.dto.Promotion;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prices single orders with a stateful session kept per order, enabled by {@code shopapp.rules.incremental.enabled}.
+ * <p>
+ * The session of an order is built from the database the first time the order is priced. Units added to the order
+ * afterwards are applied to it as an insert or update of a single {@link CartItem}, so the next price only evaluates
+ * the rules for that item. The sessions run the truth maintained
+ * {@value OrderRulesEngine#INCREMENTAL_ORDER_CONFIG}, which gives the same prices as the promotion engine does from
+ * scratch. A session is rebuilt when the catalog changes, sessions idle for {@code idle-timeout} are disposed. Every
+ * session weighs as much as the cart items it holds, and sessions are disposed once they hold more than
+ * {@code maximum-cart-items} items together. A session is weighed again whenever its entry is written, after it is
+ * built and after every add.
+ * <p>
+ * A write that overlaps a session being built cannot tell whether the database read saw it, so that session is used
+ * for the one price it was built for and dropped: every write takes an epoch before it starts and taints the session
+ * being built, a session whose build started after the write started is dropped when the write completes. Epochs and
+ * builds are assigned under the lock of the order's cache entry.
+ */
+@Component
+@Log4j2
+public class IncrementalRuleSessions {
+    static final String CACHE_NAME = "rules.incremental.sessions";
+    private volatile boolean enabled;
+    private final KieBase kieBase;
+    private final PricingScheduler pricingScheduler;
+    private final Cache<Long, OrderSession> sessions;
+    private final AtomicLong lastEpoch = new AtomicLong();
+    private final RuleMetricsListener listener;
+    private final Counter loads;
+    private final Counter updates;
+    private final Counter discarded;
+
+    public IncrementalRuleSessions(IncrementalRulesProperties properties, RulesProperties rulesProperties,
+                                   PricingScheduler pricingScheduler, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.kieBase = enabled ? OrderRulesEngine.loadRuleBase(OrderRulesEngine.INCREMENTAL_ORDER_CONFIG,
+                OrderRulesEngine.INCREMENTAL_ORDER_MODEL, rulesProperties.precompiled()) : null;
+        this.pricingScheduler = pricingScheduler;
+        this.sessions = Caffeine.newBuilder()
+                .maximumWeight(enabled ? properties.maximumCartItems() : 0)
+                .weigher((Long orderId, OrderSession session) -> session.weight())
+                .expireAfterAccess(properties.idleTimeout())
+                .removalListener((Long orderId, OrderSession session, RemovalCause cause) -> {
+                    if (session != null) {
+                        session.dispose();
+                    }
+                })
+                .recordStats()
+                .build();
+        this.listener = new RuleMetricsListener(meterRegistry);
+        this.loads = Counter.builder("rules.incremental.loads")
+                .register(meterRegistry);
+        this.updates = Counter.builder("rules.incremental.updates")
+                .register(meterRegistry);
+        this.discarded = Counter.builder("rules.incremental.discarded")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, CACHE_NAME);
+        if (enabled) {
+            log.info("Single orders are priced incrementally by sessions holding up to {} cart items, idle for at most {}",
+                    properties.maximumCartItems(), properties.idleTimeout());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stops pricing orders incrementally and disposes the sessions. Called when the promotion rules are replaced at
+     * runtime, the incremental rules are written against the rules the application was built with.
+     */
+    public void disable() {
+        if (enabled) {
+            enabled = false;
+            sessions.invalidateAll();
+            log.warn("Promotion rules were replaced, single orders are no longer priced incrementally");
+        }
+    }
+
+    /**
+     * Prices the order with its session, or builds the session from {@code order} when the order has none yet or it
+     * was built with another catalog version.
+     */
+    public Mono<Order> price(long orderId, long catalogVersion, Collection<Product> products, Mono<Order> order) {
+        return Mono.defer(() -> {
+            OrderSession session = sessions.getIfPresent(orderId);
+            if (session != null && session.isReady(catalogVersion)) {
+                return pricingScheduler.price(() -> session.price(orderId))
+                        .switchIfEmpty(Mono.defer(() -> load(orderId, catalogVersion, products, order)));
+            }
+            return load(orderId, catalogVersion, products, order);
+        });
+    }
+
+    /**
+     * Wraps the database {@code write} adding the {@code added} units to the order, applying them to the session of
+     * the order once the write succeeded. The session is dropped when the write fails or is cancelled.
+     */
+    public <T> Mono<T> write(long orderId, Map<Product, Integer> added, Mono<T> write) {
+        if (!enabled) {
+            return write;
+        }
+        return Mono.defer(() -> {
+            long writeEpoch = beginWrite(orderId);
+            return write
+                    .doOnSuccess(result -> afterWrite(orderId, writeEpoch, added))
+                    .doOnError(error -> afterWrite(orderId, writeEpoch, null))
+                    .doOnCancel(() -> afterWrite(orderId, writeEpoch, null));
+        });
+    }
+
+    private long beginWrite(long orderId) {
+        long[] writeEpoch = new long[1];
+        sessions.asMap().compute(orderId, (id, session) -> {
+            writeEpoch[0] = lastEpoch.incrementAndGet();
+            if (session != null) {
+                session.beforeWrite();
+            }
+            return session;
+        });
+        return writeEpoch[0];
+    }
+
+    private void afterWrite(long orderId, long writeEpoch, Map<Product, Integer> added) {
+        sessions.asMap().computeIfPresent(orderId, (id, session) -> {
+            if (session.afterWrite(writeEpoch, added)) {
+                return session;
+            }
+            discarded.increment();
+            session.dispose();
+            return null;
+        });
+    }
+
+    private Mono<Order> load(long orderId, long catalogVersion, Collection<Product> products, Mono<Order> order) {
+        OrderSession session = startLoading(orderId, catalogVersion);
+        return order
+                .flatMap(assembled -> pricingScheduler.price(() -> session.load(orderId, assembled, products)))
+                .doOnSuccess(priced -> sessions.asMap().replace(orderId, session, session))
+                .doFinally(signal -> {
+                    if (!session.isReady(catalogVersion)) {
+                        sessions.asMap().remove(orderId, session);
+                        session.dispose();
+                    }
+                });
+    }
+
+    /**
+     * Registers a new session for the order, unless another read is building one already. The session returned then
+     * is only used for a single price.
+     */
+    private OrderSession startLoading(long orderId, long catalogVersion) {
+        OrderSession[] started = new OrderSession[1];
+        sessions.asMap().compute(orderId, (id, current) -> {
+            if (current != null && !current.isStale(catalogVersion)) {
+                return current;
+            }
+            started[0] = new OrderSession(lastEpoch.incrementAndGet(), catalogVersion, true);
+            return started[0];
+        });
+        return started[0] != null ? started[0] : new OrderSession(0, catalogVersion, false);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sessions.invalidateAll();
+        sessions.cleanUp();
+    }
+
+    private enum State {
+        LOADING, READY, DISPOSED
+    }
+
+    private record CartEntry(CartItem item, FactHandle handle) {
+    }
+
+    /**
+     * Session of a single order together with the handles of its cart items. All methods hold the monitor of the
+     * session, a session is never used by two threads at once.
+     */
+    private final class OrderSession {
+        private final long loadEpoch;
+        private final long catalogVersion;
+        private final Map<Product, CartEntry> items = new LinkedHashMap<>();
+        private Set<Product> catalog = Set.of();
+        private KieSession kieSession;
+        private State state = State.LOADING;
+        private boolean reusable;
+
+        private OrderSession(long loadEpoch, long catalogVersion, boolean reusable) {
+            this.loadEpoch = loadEpoch;
+            this.catalogVersion = catalogVersion;
+            this.reusable = reusable;
+        }
+
+        synchronized boolean isReady(long catalogVersion) {
+            return state == State.READY && this.catalogVersion == catalogVersion;
+        }
+
+        synchronized boolean isStale(long catalogVersion) {
+            return state == State.DISPOSED || this.catalogVersion != catalogVersion;
+        }
+
+        /**
+         * @return number of cart items the session holds, at least one
+         */
+        synchronized int weight() {
+            return Math.max(1, items.size());
+        }
+
+        synchronized void beforeWrite() {
+            if (state == State.LOADING) {
+                reusable = false;
+            }
+        }
+
+        /**
+         * Applies units added by a committed write, {@code added} is {@code null} when the outcome of the write is
+         * unknown.
+         *
+         * @return whether the session is still in line with the database
+         */
+        synchronized boolean afterWrite(long writeEpoch, Map<Product, Integer> added) {
+            if (state == State.LOADING) {
+                reusable = false;
+                return true;
+            }
+            if (state != State.READY || added == null || loadEpoch > writeEpoch || !catalog.containsAll(added.keySet())) {
+                return false;
+            }
+            added.forEach(this::add);
+            updates.increment(added.size());
+            return true;
+        }
+
+        synchronized Order load(long orderId, Order order, Collection<Product> products) {
+            kieSession = kieBase.newKieSession();
+            kieSession.addEventListener((AgendaEventListener) listener);
+            kieSession.addEventListener((RuleRuntimeEventListener) listener);
+            catalog = new HashSet<>(products);
+            products.forEach(kieSession::insert);
+            order.items().forEach(item -> add(item.getProduct(), item.getQuantity()));
+            loads.increment();
+            Order priced = priceItems(orderId);
+            if (state == State.LOADING && reusable) {
+                state = State.READY;
+            } else {
+                dispose();
+            }
+            return priced;
+        }
+
+        /**
+         * @return the priced order, {@code null} when the session was disposed in the meantime
+         */
+        synchronized Order price(long orderId) {
+            return state == State.READY ? priceItems(orderId) : null;
+        }
+
+        synchronized void dispose() {
+            state = State.DISPOSED;
+            if (kieSession != null) {
+                kieSession.dispose();
+                kieSession = null;
+            }
+        }
+
+        private void add(Product product, int quantity) {
+            CartEntry entry = items.get(product);
+            if (entry == null) {
+                CartItem item = new CartItem(product, quantity);
+                items.put(product, new CartEntry(item, kieSession.insert(item)));
+            } else {
+                entry.item().addQuantity(quantity);
+                kieSession.update(entry.handle(), entry.item());
+            }
+        }
+
+        private Order priceItems(long orderId) {
+            kieSession.fireAllRules();
+            Map<CartItem, List<Promotion>> promotions = new IdentityHashMap<>();
+            for (Object fact : kieSession.getObjects(Promotion.class::isInstance)) {
+                Promotion promotion = (Promotion) fact;
+                promotions.computeIfAbsent(promotion.item(), item -> new ArrayList<>(1)).add(promotion);
+            }
+            List<LineItem> lines = new ArrayList<>(items.size() + promotions.size());
+            List<LineItem> extraItems = new ArrayList<>();
+            for (CartEntry entry : items.values()) {
+                CartItem item = entry.item();
+                LineItem line = LineItem.builder().product(item.getProduct()).quantity(item.getQuantity()).build();
+                for (Promotion promotion : promotions.getOrDefault(item, List.of())) {
+                    if (promotion.extraItem()) {
+                        extraItems.add(new LineItem(item.getProduct(), promotion.discountedQuantity(),
+                                promotion.discount(), promotion.discountedQuantity()));
+                    } else {
+                        line.setDiscount(promotion.discount());
+                        line.setDiscountedQuantity(promotion.discountedQuantity());
+                    }
+                }
+                lines.add(line);
+            }
+            lines.addAll(extraItems);
+            return new Order(orderId, lines);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package pl.dexbtyes.shopapp.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Hand-written equivalent of {@code orders.drl}. The rules only count units of one line item, so they are applied in
+ * two indexed passes over the items in the order the agenda groups fire, without a session, fact handles or
+ * iterators. The only allocation is the line item of the free oranges.
+ */
+@Component
+@ConditionalOnProperty(name = PromotionEngine.ENGINE_PROPERTY, havingValue = "java")
+public class JavaPromotionEngine implements PromotionEngine {
+    static final String ORANGE = "orange";
+    static final String APPLE = "apple";
+    static final int FREE = 100;
+    static final int SECOND_APPLE_DISCOUNT = 30;
+
+    @Override
+    public Order execute(Order order, Collection<Product> products) {
+        List<LineItem> items = order.items();
+        // "Free Orange": the added line items are fully discounted and never match again
+        for (int i = 0, size = items.size(); i < size; i++) {
+            LineItem item = items.get(i);
+            if (item.getDiscount() == 0 && item.getQuantity() > 1 && isPromoted(item.getProduct(), ORANGE, products)) {
+                int free = item.getQuantity() / 2;
+                order.addItem(new LineItem(item.getProduct(), free, FREE, free));
+            }
+        }
+        // "Discount every second apple"
+        for (int i = 0, size = items.size(); i < size; i++) {
+            LineItem item = items.get(i);
+            if (item.getDiscountedQuantity() == 0 && item.getQuantity() > 1 && isPromoted(item.getProduct(), APPLE, products)) {
+                item.setDiscount(SECOND_APPLE_DISCOUNT);
+                item.setDiscountedQuantity(item.getQuantity() / 2);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Same match as the rules: a catalog product with the promoted name that equals the product of the line item.
+     */
+    private static boolean isPromoted(Product product, String name, Collection<Product> products) {
+        return name.equals(product.name()) && products.contains(product);
+    }
+}
@@ -0,0 +1,276 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.configuration.WriteBehindProperties;
+import pl.dexbtyes.shopapp.exception.WriteBufferFullException;
+import pl.dexbtyes.shopapp.repository.OrderItemsRepository;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffers quantities added to orders and writes them in batches, enabled by {@code shopapp.orders.write-behind.enabled}.
+ * <p>
+ * Adds to the same item of an order are merged in memory, so a burst of adds costs a single upsert. The buffered
+ * orders are written in one batch every {@code flush-interval}, or as soon as {@code maximum-pending-items} items are
+ * buffered. Batches are written one at a time in the order they were taken. Every read of orders waits for the
+ * buffered items of the orders it reads to be written first, so reads see every add that completed before them. A
+ * batch that fails is put back into the buffer and written again with the next one, the reads waiting for it fail.
+ * Adds are rejected with {@link WriteBufferFullException} once {@code maximum-buffered-items} items are buffered,
+ * so a database that keeps failing does not make the buffer grow without bound. Buffered items are written when the
+ * application stops, waiting at most {@code shutdown-timeout}.
+ * <p>
+ * Items are merged under the lock of the order's entry in a {@link ConcurrentHashMap}, so adds to different orders
+ * do not contend. The buffer is published as {@code orders.write-behind.pending} (buffered items),
+ * {@code orders.write-behind.lag} (time from the first buffered add of an order to its commit),
+ * {@code orders.write-behind.coalesced} (adds merged into a buffered item), {@code orders.write-behind.rejected} and
+ * {@code orders.write-behind.failures}.
+ */
+@Component
+@Log4j2
+public class OrderItemsWriteBuffer {
+    private final boolean enabled;
+    private final int maximumPendingItems;
+    private final int maximumBufferedItems;
+    private final Duration shutdownTimeout;
+    private final OrderItemsRepository orderItemsRepository;
+    private final Map<Long, PendingItems> pending = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<Void>> flushing = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingItems = new AtomicInteger();
+    private final Sinks.Many<Batch> batches = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable writer;
+    private final Timer lag;
+    private final Counter coalesced;
+    private final Counter rejected;
+    private final Counter failures;
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+
+    public OrderItemsWriteBuffer(WriteBehindProperties properties, OrderItemsRepository orderItemsRepository,
+                                 MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.maximumPendingItems = properties.maximumPendingItems();
+        this.maximumBufferedItems = properties.maximumBufferedItems();
+        this.shutdownTimeout = properties.shutdownTimeout();
+        this.orderItemsRepository = orderItemsRepository;
+        this.writer = batches.asFlux()
+                .concatMap(this::write)
+                .subscribe();
+        Gauge.builder("orders.write-behind.pending", pendingItems, AtomicInteger::get)
+                .register(meterRegistry);
+        this.lag = Timer.builder("orders.write-behind.lag")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("orders.write-behind.coalesced")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("orders.write-behind.rejected")
+                .register(meterRegistry);
+        this.failures = Counter.builder("orders.write-behind.failures")
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("Added order items are written every {} or every {} items", properties.flushInterval(),
+                    maximumPendingItems);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Buffers quantities keyed by product id to be added to the items of the order.
+     *
+     * @return {@link WriteBufferFullException} when {@code maximum-buffered-items} items are already buffered
+     */
+    public Mono<Void> add(long orderId, Map<Long, Integer> quantities) {
+        return Mono.defer(() -> {
+            if (pendingItems.get() >= maximumBufferedItems) {
+                rejected.increment();
+                return Mono.error(new WriteBufferFullException());
+            }
+            buffer(orderId, quantities);
+            return Mono.empty();
+        });
+    }
+
+    private void buffer(long orderId, Map<Long, Integer> quantities) {
+        int newItems = merge(orderId, System.nanoTime(), quantities);
+        coalesced.increment(quantities.size() - newItems);
+        if (pendingItems.addAndGet(newItems) >= maximumPendingItems) {
+            flush(pending.keySet());
+        }
+    }
+
+    /**
+     * @return number of items that were not buffered yet
+     */
+    private int merge(long orderId, long firstAdded, Map<Long, Integer> quantities) {
+        int[] newItems = new int[1];
+        pending.compute(orderId, (id, items) -> {
+            PendingItems buffered = items == null ? new PendingItems(firstAdded, new HashMap<>())
+                    : new PendingItems(Math.min(items.firstAdded(), firstAdded), items.quantities());
+            quantities.forEach((productId, quantity) -> {
+                if (buffered.quantities().merge(productId, quantity, Integer::sum) == (int) quantity) {
+                    newItems[0]++;
+                }
+            });
+            return buffered;
+        });
+        return newItems[0];
+    }
+
+    /**
+     * Completes once the items buffered for the order so far are written, fails when any batch holding them failed.
+     */
+    public Mono<Void> flushed(long orderId) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            CompletableFuture<Void> done = pending.containsKey(orderId) ? flush(orderId) : flushing.get(orderId);
+            return done != null ? Mono.fromFuture(done, true) : Mono.empty();
+        });
+    }
+
+    /**
+     * Completes once all items buffered so far are written.
+     */
+    public Mono<Void> flushed() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> Mono.fromFuture(flush(pending.keySet()), true));
+    }
+
+    @Scheduled(fixedDelayString = "${shopapp.orders.write-behind.flush-interval:PT0.1S}")
+    void flushPending() {
+        if (!pending.isEmpty()) {
+            flush(pending.keySet());
+        }
+    }
+
+    /**
+     * @return completion of every batch in flight
+     */
+    private synchronized CompletableFuture<Void> flush(Collection<Long> orderIds) {
+        queue(take(orderIds));
+        return lastFlush;
+    }
+
+    /**
+     * @return completion of every batch in flight holding items of the order, {@code null} when there is none. Another
+     * flush may have taken the items of the order first, so this is not necessarily the last batch.
+     */
+    private synchronized CompletableFuture<Void> flush(long orderId) {
+        Batch batch = take(List.of(orderId));
+        CompletableFuture<Void> done = flushing.get(orderId);
+        queue(batch);
+        return done;
+    }
+
+    /**
+     * Takes the buffered items of the orders into a new batch. An order taken while an earlier batch holding it is
+     * still in flight waits for both, so a failure of the earlier one is not hidden by the later one.
+     */
+    private Batch take(Collection<Long> orderIds) {
+        Batch batch = new Batch(new HashMap<>(), new HashMap<>(), new CompletableFuture<>());
+        for (Long orderId : orderIds) {
+            pending.computeIfPresent(orderId, (id, items) -> {
+                batch.quantities().put(id, items.quantities());
+                batch.firstAdded().put(id, items.firstAdded());
+                flushing.merge(id, batch.done(), CompletableFuture::allOf);
+                return null;
+            });
+        }
+        return batch;
+    }
+
+    /**
+     * Queues a batch to be written. Batches are taken and queued under the monitor of the buffer, so they are written
+     * in the order they were taken.
+     */
+    private void queue(Batch batch) {
+        if (!batch.quantities().isEmpty()) {
+            pendingItems.addAndGet(-batch.items());
+            lastFlush = lastFlush.isDone() ? batch.done() : CompletableFuture.allOf(lastFlush, batch.done());
+            batches.tryEmitNext(batch).orThrow();
+        }
+    }
+
+    private Mono<Void> write(Batch batch) {
+        return orderItemsRepository.addAllQuantities(batch.quantities())
+                .retryWhen(Retry.max(OrderService.UPSERT_RETRIES).filter(DuplicateKeyException.class::isInstance))
+                .doOnSuccess(rows -> {
+                    long now = System.nanoTime();
+                    batch.firstAdded().values().forEach(firstAdded -> lag.record(now - firstAdded, TimeUnit.NANOSECONDS));
+                    batch.done().complete(null);
+                    forgetWritten(batch);
+                })
+                .doOnError(error -> {
+                    failures.increment();
+                    log.error("Writing {} buffered order items failed, they are kept for the next flush", batch.items(),
+                            error);
+                    batch.quantities().forEach((orderId, quantities) ->
+                            pendingItems.addAndGet(merge(orderId, batch.firstAdded().get(orderId), quantities)));
+                    batch.done().completeExceptionally(error);
+                    forgetWritten(batch);
+                })
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * Drops the orders of the batch from the batches in flight, unless a later batch holding them is still in flight.
+     */
+    private void forgetWritten(Batch batch) {
+        batch.quantities().keySet().forEach(orderId ->
+                flushing.computeIfPresent(orderId, (id, done) -> done.isDone() ? null : done));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        try {
+            flush(pending.keySet()).get(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException exception) {
+            log.error("{} buffered order items were not written", pendingItems.get(), exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * @param firstAdded time of the first add buffered for the order
+     * @param quantities quantities keyed by product id, only changed under the lock of the order's entry
+     */
+    private record PendingItems(long firstAdded, Map<Long, Integer> quantities) {
+    }
+
+    private record Batch(Map<Long, Map<Long, Integer>> quantities, Map<Long, Long> firstAdded,
+                         CompletableFuture<Void> done) {
+
+        int items() {
+            return quantities.values().stream().mapToInt(Map::size).sum();
+        }
+    }
+}
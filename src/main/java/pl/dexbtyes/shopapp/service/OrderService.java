@@ -1,28 +1,37 @@
 package pl.dexbtyes.shopapp.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.log4j.Log4j2;
-import org.kie.api.runtime.KieContainer;
-import org.kie.api.runtime.KieSession;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Example;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.CartLine;
 import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.OrderPage;
 import pl.dexbtyes.shopapp.dto.Product;
 import pl.dexbtyes.shopapp.dto.Status;
 import pl.dexbtyes.shopapp.entity.OrderItemsEntity;
 import pl.dexbtyes.shopapp.entity.ProductEntity;
+import pl.dexbtyes.shopapp.exception.PageSizeOutOfRangeException;
 import pl.dexbtyes.shopapp.exception.ProductNotFoundException;
 import pl.dexbtyes.shopapp.exception.QuantityTooLowException;
+import pl.dexbtyes.shopapp.exception.ShopappException;
 import pl.dexbtyes.shopapp.repository.OrderItemsRepository;
-import pl.dexbtyes.shopapp.repository.ProductRepository;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.GroupedFlux;
 import reactor.core.publisher.Mono;
-import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,119 +40,254 @@ public class OrderService {
     public static final String PRODUCT_NOT_FOUND = "Product not found";
     public static final String PRODUCT_ADDED_TO_ORDER = "Product added to order";
     public static final String ORDER_NOT_FOUND = "Order not found";
-    private final ProductRepository productRepository;
+    public static final int MAX_ORDERS_PAGE_SIZE = 500;
+    public static final int MAX_ORDER_IDS_PAGE_SIZE = 10_000;
+    static final int ITEMS_PAGE_SIZE = 256;
+    static final int UPSERT_RETRIES = 3;
     private final OrderItemsRepository orderItemsRepository;
-    private final KieContainer kieContainer;
+    private final ProductCatalog productCatalog;
+    private final PromotionEngine promotionEngine;
+    private final PricedOrderCache pricedOrders;
+    private final PricingScheduler pricingScheduler;
+    private final IncrementalRuleSessions incrementalSessions;
+    private final PromotionMemo promotionMemo;
+    private final OrderItemsWriteBuffer writeBuffer;
+    private final Map<Long, CompletableFuture<Order>> ordersInFlight = new ConcurrentHashMap<>();
+    private final Counter coalescedOrders;
 
-    public OrderService(ProductRepository productRepository, OrderItemsRepository orderItemsRepository, KieContainer kieContainer) {
-        this.productRepository = productRepository;
+    public OrderService(OrderItemsRepository orderItemsRepository, ProductCatalog productCatalog, PromotionEngine promotionEngine,
+                        PricedOrderCache pricedOrders, PricingScheduler pricingScheduler,
+                        IncrementalRuleSessions incrementalSessions, PromotionMemo promotionMemo,
+                        OrderItemsWriteBuffer writeBuffer, MeterRegistry meterRegistry) {
         this.orderItemsRepository = orderItemsRepository;
-        this.kieContainer = kieContainer;
+        this.productCatalog = productCatalog;
+        this.promotionEngine = promotionEngine;
+        this.pricedOrders = pricedOrders;
+        this.pricingScheduler = pricingScheduler;
+        this.incrementalSessions = incrementalSessions;
+        this.promotionMemo = promotionMemo;
+        this.writeBuffer = writeBuffer;
+        Gauge.builder("orders.in-flight", ordersInFlight, Map::size)
+                .register(meterRegistry);
+        this.coalescedOrders = Counter.builder("orders.coalesced")
+                .register(meterRegistry);
     }
 
     public Mono<Status> addItemsForOrder(long orderId, long productId, int quantity) {
         return Mono.just(OrderItemsEntity.builder().orderId(orderId).productId(productId).quantity(quantity).build())
                 .flatMap(this::validateQuantity)
-                .flatMap(entity -> productRepository.findById(entity.getProductId()))
+                .flatMap(entity -> productCatalog.findById(entity.getProductId()))
                 .switchIfEmpty(Mono.error(new ProductNotFoundException()))
-                .flatMapMany(item -> saveItems(orderId, item, quantity))
+                .flatMap(item -> saveItems(orderId, item, quantity))
                 .then(Mono.just(new Status(HttpStatus.CREATED.value(), PRODUCT_ADDED_TO_ORDER)));
     }
 
+    /**
+     * Adds all lines to the order with a single catalog lookup and a single batched write. Every line gets its own
+     * status in request order, invalid lines are skipped without failing the valid ones.
+     */
+    public Flux<Status> addItemsForOrder(long orderId, List<CartLine> lines) {
+        if (lines.isEmpty()) {
+            return Flux.empty();
+        }
+        Set<Long> productIds = lines.stream()
+                .map(CartLine::productId)
+                .collect(Collectors.toSet());
+        return productCatalog.findAllById(productIds)
+                .flatMapMany(products -> {
+                    List<Status> statuses = new ArrayList<>(lines.size());
+                    Map<Long, Integer> quantities = new LinkedHashMap<>();
+                    for (CartLine line : lines) {
+                        if (line.quantity() <= 0) {
+                            statuses.add(toStatus(new QuantityTooLowException()));
+                        } else if (!products.containsKey(line.productId())) {
+                            statuses.add(toStatus(new ProductNotFoundException()));
+                        } else {
+                            quantities.merge(line.productId(), line.quantity(), Integer::sum);
+                            statuses.add(new Status(HttpStatus.CREATED.value(), PRODUCT_ADDED_TO_ORDER));
+                        }
+                    }
+                    Map<Product, Integer> added = new LinkedHashMap<>();
+                    quantities.forEach((productId, quantity) ->
+                            added.merge(mapProductEntityToProduct(products.get(productId)), quantity, Integer::sum));
+                    Mono<?> write = writeBuffer.isEnabled() ? writeBuffer.add(orderId, quantities)
+                            : orderItemsRepository.addQuantities(orderId, quantities)
+                            .retryWhen(Retry.max(UPSERT_RETRIES).filter(DuplicateKeyException.class::isInstance));
+                    return incrementalSessions.write(orderId, added, write)
+                            .doOnSuccess(rows -> invalidate(orderId))
+                            .thenMany(Flux.fromIterable(statuses));
+                });
+    }
+
+    private static Status toStatus(ShopappException exception) {
+        return new Status(exception.getCode(), exception.getMessage());
+    }
+
     private Mono<OrderItemsEntity> validateQuantity(OrderItemsEntity entity) {
         return entity.getQuantity() > 0 ? Mono.just(entity) : Mono.error(new QuantityTooLowException());
     }
 
-    private Flux<OrderItemsEntity> saveItems(long orderId, ProductEntity item, int quantity) {
-        return orderItemsRepository.findAll(getExampleOrderItem(orderId, item))
-                .defaultIfEmpty(getNewOrderItemEntity(orderId, item))
-                .map(e -> e.withQuantity(e.getQuantity() + quantity))
-                .flatMap(orderItemsRepository::save);
+    private Mono<?> saveItems(long orderId, ProductEntity item, int quantity) {
+        Mono<?> write = writeBuffer.isEnabled() ? writeBuffer.add(orderId, Map.of(item.id(), quantity))
+                : orderItemsRepository.addQuantity(orderId, item.id(), quantity)
+                .retryWhen(Retry.max(UPSERT_RETRIES).filter(DuplicateKeyException.class::isInstance));
+        return incrementalSessions.write(orderId, Map.of(mapProductEntityToProduct(item), quantity), write)
+                .doOnSuccess(rows -> invalidate(orderId));
     }
 
-    private Example<OrderItemsEntity> getExampleOrderItem(long orderId, ProductEntity item) {
-        return Example.of(
-                OrderItemsEntity.builder()
-                        .orderId(orderId)
-                        .productId(item.id())
-                        .build()
-        );
+    /**
+     * Must be called once a change of the order is committed, reads started after it neither get a cached order nor
+     * join one read before.
+     */
+    private void invalidate(long orderId) {
+        pricedOrders.invalidate(orderId);
+        ordersInFlight.remove(orderId);
     }
 
-    private OrderItemsEntity getNewOrderItemEntity(long orderId, ProductEntity item) {
-        return OrderItemsEntity.builder()
-                .productId(item.id())
-                .orderId(orderId)
-                .quantity(0)
-                .build();
+    public Flux<Order> getOrders() {
+        return writeBuffer.flushed()
+                .then(productCatalog.snapshot())
+                .flatMapMany(catalog -> assembleOrders(orderItemsRepository.findAll())
+                        .concatMap(order -> applyPromotions(order, catalog)));
     }
 
-    public Flux<Order> getOrders() {
-        return orderItemsRepository.findAll()
-                .groupBy(OrderItemsEntity::getOrderId)
-                .flatMap(this::processOrderItems)
-                .flatMap(this::mergeOrderWithProducts)
-                .map(tuple -> applyDroolRules(tuple.getT1(), tuple.getT2()));
+    /**
+     * Streams ids of orders greater than {@code afterOrderId} (all orders when {@code null}), at most {@code size}
+     * of them when given. Orders are neither assembled nor priced.
+     */
+    public Flux<Long> getOrderIds(Long afterOrderId, Integer size) {
+        if (size != null && (size < 1 || size > MAX_ORDER_IDS_PAGE_SIZE)) {
+            return Flux.error(new PageSizeOutOfRangeException(MAX_ORDER_IDS_PAGE_SIZE));
+        }
+        return writeBuffer.flushed()
+                .thenMany(orderItemsRepository.findOrderIds(cursor(afterOrderId), size == null ? Integer.MAX_VALUE : size));
     }
 
-    private Mono<Tuple2<Order, List<Product>>> mergeOrderWithProducts(Order order) {
-        return getProducts().map(products -> Tuples.of(order, products));
+    /**
+     * Returns up to {@code size} priced orders with an id greater than {@code afterOrderId} (all orders when
+     * {@code null}). Only the items of the requested orders are read from the database.
+     */
+    public Mono<OrderPage> getOrdersPage(Long afterOrderId, int size) {
+        if (size < 1 || size > MAX_ORDERS_PAGE_SIZE) {
+            return Mono.error(new PageSizeOutOfRangeException(MAX_ORDERS_PAGE_SIZE));
+        }
+        return writeBuffer.flushed()
+                .then(productCatalog.snapshot())
+                .flatMap(catalog -> assembleOrders(orderItemsRepository.findOrdersPage(cursor(afterOrderId), size))
+                        .concatMap(order -> applyPromotions(order, catalog))
+                        .collectList())
+                .map(orders -> new OrderPage(orders, orders.size() == size ? orders.get(size - 1).id() : null));
     }
 
-    private Mono<List<Product>> getProducts() {
-        return productRepository.findAll()
-                .map(pe -> Product.builder()
-                        .name(pe.name())
-                        .basePrice(pe.price())
-                        .build()
-                )
-                .collectList();
+    /**
+     * Streams priced orders with an id greater than {@code afterOrderId} (all orders when {@code null}). Every order
+     * is emitted as soon as its last item is read, and demand of the subscriber is propagated to the query.
+     */
+    public Flux<Order> streamOrders(Long afterOrderId) {
+        return writeBuffer.flushed()
+                .then(productCatalog.snapshot())
+                .flatMapMany(catalog -> orderItemsRepository.findOrdersAfter(cursor(afterOrderId))
+                        .bufferUntilChanged(OrderItemsEntity::getOrderId)
+                        .concatMap(items -> assembleOrders(Flux.fromIterable(items)))
+                        .concatMap(order -> applyPromotions(order, catalog)));
     }
 
-    private Flux<Order> processOrderItems(GroupedFlux<Long, OrderItemsEntity> gf) {
-        return gf.flatMap(orderItem -> orderItemsEntityToOrders(gf.key(), orderItem))
-                .groupBy(Order::id)
-                .flatMap(group -> group.reduce((o1, o2) -> o1.addAll(o2.items())));
+    private static long cursor(Long afterOrderId) {
+        return afterOrderId == null ? Long.MIN_VALUE : afterOrderId;
     }
 
-    private Mono<Order> orderItemsEntityToOrders(long orderId, OrderItemsEntity orderItem) {
-        return productRepository.findById(orderItem.getProductId())
-                .flatMap(productEntity -> productEntityToLineItems(orderItem, productEntity))
-                .map(list -> new Order(orderId, list));
+    private Flux<Order> assembleOrders(Flux<OrderItemsEntity> orderItems) {
+        return orderItems.buffer(ITEMS_PAGE_SIZE)
+                .concatMap(page -> productCatalog.findAllById(getProductIds(page))
+                        .map(products -> Tuples.of(page, products)))
+                .collect(LinkedHashMap<Long, Order>::new, (orders, page) -> addToOrders(orders, page.getT1(), page.getT2()))
+                .flatMapIterable(Map::values);
     }
 
-    private Mono<List<LineItem>> productEntityToLineItems(OrderItemsEntity orderItem, ProductEntity productEntity) {
-        return Flux.range(0, orderItem.getQuantity())
-                .map(i -> mapProductEntityToLineItem(productEntity))
-                .collect(Collectors.toList());
+    private static Set<Long> getProductIds(List<OrderItemsEntity> page) {
+        return page.stream()
+                .map(OrderItemsEntity::getProductId)
+                .collect(Collectors.toSet());
     }
 
-    private LineItem mapProductEntityToLineItem(ProductEntity productEntity) {
-        return LineItem.builder()
-                .product(Product.builder()
-                        .name(productEntity.name())
-                        .basePrice(productEntity.price())
-                        .build())
-                .discount(0)
+    private void addToOrders(Map<Long, Order> orders, List<OrderItemsEntity> page, Map<Long, ProductEntity> products) {
+        page.stream()
+                .filter(orderItem -> products.containsKey(orderItem.getProductId()))
+                .forEach(orderItem -> orders
+                        .computeIfAbsent(orderItem.getOrderId(), id -> new Order(id, new ArrayList<>()))
+                        .addQuantity(mapProductEntityToProduct(products.get(orderItem.getProductId())), orderItem.getQuantity()));
+    }
+
+    private Product mapProductEntityToProduct(ProductEntity productEntity) {
+        return Product.builder()
+                .name(productEntity.name())
+                .basePrice(productEntity.price())
                 .build();
     }
 
+    /**
+     * Returns the priced order. Concurrent calls for the same order share a single read, the first caller starts it
+     * and the others, counted by {@code orders.coalesced}, wait for its result. The read is dropped from the in-flight
+     * reads once it completes or fails, and as soon as the order changes, so callers arriving later read it again.
+     * Unlike {@link PricedOrderCache}, which shares loads only while it is enabled, this also covers the catalog
+     * lookup. Cancelling a caller does not cancel the shared read.
+     */
     public Mono<Order> getOrderById(long orderId) {
-        return orderItemsRepository.findAll(Example.of(OrderItemsEntity.builder().orderId(orderId).build()))
-                .switchIfEmpty(Mono.error(new IllegalArgumentException(ORDER_NOT_FOUND)))
-                .flatMap(orderItem -> orderItemsEntityToOrders(orderId, orderItem))
-                .reduce((order, order2) -> order.addAll(order2.items()))
-                .zipWith(getProducts())
-                .map(tuple -> applyDroolRules(tuple.getT1(), tuple.getT2()));
-    }
-
-    private Order applyDroolRules(Order order, List<Product> products) {
-        KieSession kieSession = kieContainer.newKieSession();
-        kieSession.setGlobal("logger", log);
-        products.forEach(kieSession::insert);
-        kieSession.insert(order);
-        kieSession.fireAllRules();
-        kieSession.dispose();
-        return order;
+        return Mono.defer(() -> {
+            CompletableFuture<Order> started = new CompletableFuture<>();
+            CompletableFuture<Order> running = ordersInFlight.putIfAbsent(orderId, started);
+            if (running != null) {
+                coalescedOrders.increment();
+                return Mono.fromFuture(running, true);
+            }
+            loadOrderById(orderId).toFuture().whenComplete((order, error) -> {
+                ordersInFlight.remove(orderId, started);
+                if (error != null) {
+                    started.completeExceptionally(error);
+                } else {
+                    started.complete(order);
+                }
+            });
+            return Mono.fromFuture(started, true);
+        });
+    }
+
+    /**
+     * Returns the priced order from {@link PricedOrderCache}, the order is priced only when it changed since it was
+     * cached or the catalog did.
+     */
+    private Mono<Order> loadOrderById(long orderId) {
+        return productCatalog.snapshot()
+                .flatMap(catalog -> pricedOrders.get(orderId, catalog.version(), () -> priceOrder(orderId, catalog)));
+    }
+
+    /**
+     * Reads and prices the order. With {@link IncrementalRuleSessions} enabled the order is read only when it has no
+     * live session. With {@link OrderItemsWriteBuffer} enabled the order is read once its buffered items are written.
+     */
+    private Mono<Order> priceOrder(long orderId, ProductCatalog.Snapshot catalog) {
+        Mono<Order> order = writeBuffer.flushed(orderId)
+                .then(Mono.defer(() -> assembleOrders(orderItemsRepository.findAll(Example.of(OrderItemsEntity.builder().orderId(orderId).build()))
+                                .switchIfEmpty(Mono.error(new IllegalArgumentException(ORDER_NOT_FOUND))))
+                        .next()));
+        if (incrementalSessions.isEnabled()) {
+            return incrementalSessions.price(orderId, catalog.version(), catalog.products(), order);
+        }
+        return order.flatMap(assembled -> applyPromotions(assembled, catalog));
+    }
+
+    /**
+     * Prices the order from {@link PromotionMemo} when its cart composition was priced before, on the pricing
+     * scheduler otherwise.
+     */
+    private Mono<Order> applyPromotions(Order order, ProductCatalog.Snapshot catalog) {
+        return Mono.defer(() -> {
+            Order memoized = promotionMemo.reapply(order, catalog.version());
+            if (memoized != null) {
+                return Mono.just(memoized);
+            }
+            return pricingScheduler.price(() -> promotionMemo.price(order, catalog.version(),
+                    unpriced -> promotionEngine.execute(unpriced, catalog.products())));
+        });
     }
 }
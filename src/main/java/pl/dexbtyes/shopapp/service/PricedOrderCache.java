@@ -0,0 +1,81 @@
+package pl.dexbtyes.shopapp.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.configuration.OrderCacheProperties;
+import pl.dexbtyes.shopapp.dto.Order;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of priced orders keyed by order id, order version and catalog version.
+ * <p>
+ * Every order gets a version the first time it is read, {@link #invalidate(long)} replaces it with a new one once a
+ * write has been committed. A read that started before the write can still complete after it, but it stores its
+ * result under the previous version, which no later read asks for. Versions come from a single counter so an order
+ * whose version was evicted never gets an old one back, and a catalog refresh that changes prices changes the key as
+ * well. Concurrent reads of the same order share one load.
+ */
+@Component
+public class PricedOrderCache {
+    static final String CACHE_NAME = "orders.priced";
+    private final AsyncCache<Key, Order> orders;
+    private final Cache<Long, Long> versions;
+    private final AtomicLong lastVersion = new AtomicLong();
+    private volatile long lastCatalogVersion;
+
+    public PricedOrderCache(OrderCacheProperties properties, MeterRegistry meterRegistry) {
+        this.orders = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfterWrite(properties.expireAfterWrite())
+                .recordStats()
+                .buildAsync();
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfterAccess(properties.expireAfterWrite())
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, orders, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached order or subscribes to {@code loader} once for all concurrent callers. Failed and empty
+     * loads are not cached.
+     */
+    public Mono<Order> get(long orderId, long catalogVersion, Supplier<Mono<Order>> loader) {
+        return Mono.defer(() -> {
+            lastCatalogVersion = catalogVersion;
+            Key key = new Key(orderId, versions.get(orderId, id -> lastVersion.incrementAndGet()), catalogVersion);
+            return Mono.fromFuture(orders.get(key, (k, executor) -> loader.get().toFuture()), true);
+        });
+    }
+
+    /**
+     * Moves the order to a new version, must be called after the change of the order is committed. The entry of the
+     * previous version is dropped right away, entries priced with an older catalog are unreachable anyway and age out.
+     */
+    public void invalidate(long orderId) {
+        Long previous = versions.asMap().put(orderId, lastVersion.incrementAndGet());
+        if (previous != null) {
+            orders.synchronous().invalidate(new Key(orderId, previous, lastCatalogVersion));
+        }
+    }
+
+    /**
+     * Moves every order to a new version, e.g. after the promotion rules changed. Reads in flight store their result
+     * under the previous versions, which no later read asks for.
+     */
+    public void invalidateAll() {
+        lastVersion.incrementAndGet();
+        versions.invalidateAll();
+        orders.synchronous().invalidateAll();
+    }
+
+    record Key(long orderId, long version, long catalogVersion) {
+    }
+}
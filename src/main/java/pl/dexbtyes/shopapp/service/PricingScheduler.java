@@ -0,0 +1,71 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.configuration.PricingProperties;
+import pl.dexbtyes.shopapp.exception.PricingOverloadedException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded thread pool the CPU-bound promotion evaluation runs on, so that it never blocks the event loop or the
+ * thread an R2DBC result arrived on.
+ * <p>
+ * Orders wait in a queue of {@code shopapp.pricing.queue-capacity} when all {@code shopapp.pricing.threads} are busy,
+ * beyond that pricing fails fast with {@link PricingOverloadedException}. The pool is published as the
+ * {@code executor.*} meters tagged {@code name=pricing}: queue depth ({@code executor.queued}), execution time
+ * ({@code executor}) and time spent in the queue ({@code executor.idle}).
+ */
+@Component
+@Log4j2
+public class PricingScheduler {
+    static final String NAME = "pricing";
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final Counter rejected;
+
+    public PricingScheduler(PricingProperties properties, MeterRegistry meterRegistry) {
+        int threads = properties.effectiveThreads();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.queueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, NAME + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.scheduler = Schedulers.fromExecutorService(ExecutorServiceMetrics.monitor(meterRegistry, executor, NAME), NAME);
+        this.rejected = Counter.builder("pricing.rejected")
+                .register(meterRegistry);
+        log.info("Promotions are evaluated on {} threads with a queue of {}", threads, properties.queueCapacity());
+    }
+
+    /**
+     * Runs {@code pricing} on the pool when subscribed.
+     */
+    public <T> Mono<T> price(Supplier<T> pricing) {
+        return Mono.fromSupplier(pricing)
+                .subscribeOn(scheduler)
+                .onErrorMap(RejectedExecutionException.class, exception -> {
+                    rejected.increment();
+                    return new PricingOverloadedException();
+                });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.dispose();
+    }
+}
@@ -0,0 +1,142 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.dto.Product;
+import pl.dexbtyes.shopapp.entity.ProductEntity;
+import pl.dexbtyes.shopapp.repository.ProductRepository;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable in-memory snapshot of the {@code products} table.
+ * <p>
+ * The snapshot is loaded lazily, reloaded every {@code shopapp.catalog.refresh-interval} and whenever a lookup
+ * finds a product in the database that the snapshot does not know yet. Its version only changes when the
+ * content of the table changes.
+ */
+@Component
+@Log4j2
+public class ProductCatalog {
+    private final ProductRepository productRepository;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer refreshes;
+
+    public ProductCatalog(ProductRepository productRepository, MeterRegistry meterRegistry) {
+        this.productRepository = productRepository;
+        this.hits = Counter.builder("catalog.lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("catalog.lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.refreshes = Timer.builder("catalog.refreshes")
+                .register(meterRegistry);
+        Gauge.builder("catalog.products", snapshot, ref -> ref.get() == null ? 0 : ref.get().byId().size())
+                .register(meterRegistry);
+        Gauge.builder("catalog.version", snapshot, ref -> ref.get() == null ? 0 : ref.get().version())
+                .register(meterRegistry);
+    }
+
+    public Mono<Snapshot> snapshot() {
+        return Mono.defer(() -> {
+            Snapshot current = snapshot.get();
+            return current != null ? Mono.just(current) : refresh();
+        });
+    }
+
+    public Mono<ProductEntity> findById(long productId) {
+        return findAllById(Set.of(productId))
+                .mapNotNull(products -> products.get(productId));
+    }
+
+    public Mono<ProductEntity> findByName(String name) {
+        return snapshot().mapNotNull(current -> current.byName().get(name));
+    }
+
+    /**
+     * Resolves products from the snapshot and falls back to a single batched query for ids it does not contain.
+     * Products found that way trigger a refresh so the next lookup is served from memory.
+     */
+    public Mono<Map<Long, ProductEntity>> findAllById(Collection<Long> productIds) {
+        return snapshot().flatMap(current -> {
+            Map<Long, ProductEntity> found = new HashMap<>();
+            Set<Long> missing = new HashSet<>();
+            for (Long productId : productIds) {
+                ProductEntity product = current.byId().get(productId);
+                if (product != null) {
+                    found.put(productId, product);
+                } else {
+                    missing.add(productId);
+                }
+            }
+            hits.increment(found.size());
+            if (missing.isEmpty()) {
+                return Mono.just(found);
+            }
+            misses.increment(missing.size());
+            return productRepository.findAllById(missing)
+                    .doOnNext(product -> found.put(product.id(), product))
+                    .count()
+                    .flatMap(count -> count > 0 ? refresh().thenReturn(found) : Mono.just(found));
+        });
+    }
+
+    public Mono<Snapshot> refresh() {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            return productRepository.findAll()
+                    .collectList()
+                    .map(products -> snapshot.updateAndGet(previous -> Snapshot.next(previous, products)))
+                    .doOnTerminate(() -> sample.stop(refreshes));
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${shopapp.catalog.refresh-interval:PT1M}")
+    void scheduledRefresh() {
+        refresh().subscribe(
+                current -> log.debug("Product catalog refreshed, version {}", current.version()),
+                throwable -> log.warn("Product catalog refresh failed", throwable)
+        );
+    }
+
+    public record Snapshot(long version, Map<Long, ProductEntity> byId, Map<String, ProductEntity> byName,
+                           List<Product> products) {
+
+        static Snapshot next(Snapshot previous, List<ProductEntity> entities) {
+            Map<Long, ProductEntity> byId = entities.stream()
+                    .collect(Collectors.toUnmodifiableMap(ProductEntity::id, Function.identity()));
+            if (previous != null && previous.byId().equals(byId)) {
+                return previous;
+            }
+            return new Snapshot(
+                    previous == null ? 1 : previous.version() + 1,
+                    byId,
+                    entities.stream()
+                            .collect(Collectors.toUnmodifiableMap(ProductEntity::name, Function.identity(), (p1, p2) -> p1)),
+                    entities.stream()
+                            .map(pe -> Product.builder()
+                                    .name(pe.name())
+                                    .basePrice(pe.price())
+                                    .build())
+                            .toList()
+            );
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package pl.dexbtyes.shopapp.service;
+
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.util.Collection;
+
+/**
+ * Applies the promotions to an assembled order. The implementation is selected with
+ * {@code shopapp.promotions.engine}: {@code drools} (default) runs {@code orders.drl} through {@link RuleSessions},
+ * {@code java} runs the same promotions in {@link JavaPromotionEngine}.
+ */
+public interface PromotionEngine {
+    String ENGINE_PROPERTY = "shopapp.promotions.engine";
+
+    /**
+     * Prices {@code order} in place and returns it.
+     *
+     * @param products the catalog, only line items of these products are promoted
+     */
+    Order execute(Order order, Collection<Product> products);
+}
@@ -0,0 +1,171 @@
+package pl.dexbtyes.shopapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.configuration.PromotionMemoProperties;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded memo of promotion results keyed by cart composition, the products and quantities of an order regardless of
+ * their order, and catalog version.
+ * <p>
+ * Promotions depend on nothing else, so an order whose composition was priced before gets the discounts of its lines
+ * and the extra line items of that result without evaluating any rule. Only results that keep the lines of the order
+ * in place and append extra items are memoized, carts with more than {@code maximum-lines} lines are always evaluated.
+ * {@link #invalidateAll()} moves the memo to a new generation when the rules change, a price started before stores
+ * its result under the previous generation, which no later lookup asks for. Hits, misses and evictions are published
+ * by {@link CaffeineCacheMetrics} as cache {@value #CACHE_NAME}.
+ */
+@Component
+public class PromotionMemo {
+    static final String CACHE_NAME = "promotions.memo";
+    private static final Comparator<PricedLine> CANONICAL_ORDER = Comparator.comparing((PricedLine line) -> line.product().name())
+            .thenComparingInt(line -> line.product().basePrice())
+            .thenComparingInt(PricedLine::quantity);
+    private final Cache<Composition, Pattern> patterns;
+    private final AtomicLong generation = new AtomicLong();
+    private final boolean enabled;
+    private final int maximumLines;
+
+    public PromotionMemo(PromotionMemoProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.maximumSize() > 0;
+        this.maximumLines = properties.maximumLines();
+        this.patterns = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, patterns, CACHE_NAME);
+    }
+
+    /**
+     * Applies the memoized promotions to {@code order}.
+     *
+     * @return the priced order, {@code null} when its composition has not been priced yet
+     */
+    public Order reapply(Order order, long catalogVersion) {
+        Composition composition = composition(order, catalogVersion);
+        if (composition == null) {
+            return null;
+        }
+        Pattern pattern = patterns.getIfPresent(composition);
+        if (pattern == null) {
+            return null;
+        }
+        for (LineItem item : order.items()) {
+            PricedLine line = pattern.lines().get(item.getProduct());
+            item.setQuantity(line.quantity());
+            item.setDiscount(line.discount());
+            item.setDiscountedQuantity(line.discountedQuantity());
+        }
+        pattern.extraItems().forEach(line -> order.addItem(line.toLineItem()));
+        return order;
+    }
+
+    /**
+     * Prices {@code order} with {@code engine} and memoizes the result for its composition.
+     */
+    public Order price(Order order, long catalogVersion, UnaryOperator<Order> engine) {
+        Composition composition = composition(order, catalogVersion);
+        if (composition == null) {
+            return engine.apply(order);
+        }
+        List<LineItem> lines = List.copyOf(order.items());
+        Order priced = engine.apply(order);
+        Pattern pattern = pattern(lines, priced);
+        if (pattern != null) {
+            patterns.put(composition, pattern);
+        }
+        return priced;
+    }
+
+    /**
+     * Forgets every composition, must be called after the rules changed.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        patterns.invalidateAll();
+    }
+
+    /**
+     * @return the key of the order, {@code null} when it is not memoized
+     */
+    private Composition composition(Order order, long catalogVersion) {
+        List<LineItem> items = order.items();
+        if (!enabled || items.size() > maximumLines) {
+            return null;
+        }
+        List<PricedLine> lines = new ArrayList<>(items.size());
+        for (LineItem item : items) {
+            if (item.getDiscount() != 0 || item.getDiscountedQuantity() != 0) {
+                return null;
+            }
+            lines.add(new PricedLine(item.getProduct(), item.getQuantity(), 0, 0));
+        }
+        lines.sort(CANONICAL_ORDER);
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).product().equals(lines.get(i - 1).product())) {
+                return null;
+            }
+        }
+        return new Composition(generation.get(), catalogVersion, lines);
+    }
+
+    /**
+     * @return the promotions of {@code priced}, {@code null} when the engine did not keep the {@code lines} of the
+     * order in place
+     */
+    private static Pattern pattern(List<LineItem> lines, Order priced) {
+        List<LineItem> items = priced.items();
+        if (items.size() < lines.size()) {
+            return null;
+        }
+        Map<Product, PricedLine> pricedLines = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (items.get(i) != lines.get(i)) {
+                return null;
+            }
+            pricedLines.put(lines.get(i).getProduct(), PricedLine.of(lines.get(i)));
+        }
+        List<PricedLine> extraItems = items.subList(lines.size(), items.size()).stream()
+                .map(PricedLine::of)
+                .toList();
+        return new Pattern(pricedLines, extraItems);
+    }
+
+    record Composition(long generation, long catalogVersion, List<PricedLine> lines) {
+    }
+
+    /**
+     * @param lines      state of every line of the order after pricing, by product
+     * @param extraItems line items the promotions appended to the order
+     */
+    private record Pattern(Map<Product, PricedLine> lines, List<PricedLine> extraItems) {
+    }
+
+    /**
+     * Immutable copy of a line item, memoized results must not share the line items of the orders they are applied to.
+     */
+    record PricedLine(Product product, int quantity, int discount, int discountedQuantity) {
+
+        static PricedLine of(LineItem item) {
+            return new PricedLine(item.getProduct(), item.getQuantity(), item.getDiscount(), item.getDiscountedQuantity());
+        }
+
+        LineItem toLineItem() {
+            return new LineItem(product, quantity, discount, discountedQuantity);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.RuleReloadProperties;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.exception.RulesRejectedException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Replaces the promotion rules without a restart, enabled by {@value #RELOAD_PROPERTY}.
+ * <p>
+ * New rules are compiled off the event loop and price {@code shopapp.rules.reload.warmup-orders} sample orders built
+ * from the catalog, which warms up the JIT for the new rule classes and rejects rules that fail at runtime. Only then
+ * are they swapped into {@link RuleSessions}, cached prices and memoized promotions are dropped and incremental
+ * pricing is turned off. Compile and warmup times are published as {@code rules.reload.compile} and
+ * {@code rules.reload.warmup}, every reload as {@code rules.reload} tagged with its result.
+ */
+@Service
+@ConditionalOnProperty(name = RuleBaseReloader.RELOAD_PROPERTY, havingValue = "true")
+@Log4j2
+public class RuleBaseReloader {
+    public static final String RELOAD_PROPERTY = "shopapp.rules.reload.enabled";
+    public static final String RULES_ACTIVE = "Rules version %d active";
+    static final int MAX_SAMPLE_QUANTITY = 10;
+    private final RuleSessions ruleSessions;
+    private final ProductCatalog productCatalog;
+    private final PricedOrderCache pricedOrders;
+    private final IncrementalRuleSessions incrementalSessions;
+    private final PromotionMemo promotionMemo;
+    private final int warmupOrders;
+    private final Timer compileTimer;
+    private final Timer warmupTimer;
+    private final Counter swapped;
+    private final Counter rejected;
+
+    public RuleBaseReloader(PromotionEngine promotionEngine, ProductCatalog productCatalog, PricedOrderCache pricedOrders,
+                            IncrementalRuleSessions incrementalSessions, PromotionMemo promotionMemo,
+                            RuleReloadProperties properties, MeterRegistry meterRegistry) {
+        if (!(promotionEngine instanceof RuleSessions sessions)) {
+            throw new IllegalStateException(RELOAD_PROPERTY + " requires " + PromotionEngine.ENGINE_PROPERTY + "=drools");
+        }
+        this.ruleSessions = sessions;
+        this.productCatalog = productCatalog;
+        this.pricedOrders = pricedOrders;
+        this.incrementalSessions = incrementalSessions;
+        this.promotionMemo = promotionMemo;
+        this.warmupOrders = properties.warmupOrders();
+        this.compileTimer = Timer.builder("rules.reload.compile")
+                .register(meterRegistry);
+        this.warmupTimer = Timer.builder("rules.reload.warmup")
+                .register(meterRegistry);
+        this.swapped = Counter.builder("rules.reload")
+                .tag("result", "swapped")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("rules.reload")
+                .tag("result", "rejected")
+                .register(meterRegistry);
+    }
+
+    public Mono<Status> current() {
+        return Mono.fromSupplier(() -> active(ruleSessions.getVersion()));
+    }
+
+    /**
+     * Compiles and warms up {@code drl} and makes it the promotion rules of all orders priced from then on. Fails with
+     * {@link RulesRejectedException} when the rules do not compile or cannot price the sample orders.
+     */
+    public Mono<Status> reload(String drl) {
+        return productCatalog.snapshot()
+                .publishOn(Schedulers.boundedElastic())
+                .map(catalog -> compileAndSwap(drl, catalog.products()))
+                .map(RuleBaseReloader::active)
+                .onErrorMap(IllegalArgumentException.class, exception -> {
+                    rejected.increment();
+                    log.warn("Rules rejected: {}", exception.getMessage());
+                    return new RulesRejectedException(exception.getMessage());
+                });
+    }
+
+    private static Status active(long version) {
+        return new Status(HttpStatus.OK.value(), RULES_ACTIVE.formatted(version));
+    }
+
+    /**
+     * Reloads are serialized, the version of a reload is the one it swapped in. Priced orders are invalidated last,
+     * once neither the memo nor the incremental sessions can price with the previous rules, so a read that still
+     * prices with them stores its result under a version no later read asks for.
+     */
+    private synchronized long compileAndSwap(String drl, List<Product> products) {
+        KieBase kieBase = compileTimer.record(() -> OrderRulesEngine.compileRules(drl));
+        warmupTimer.record(() -> warmUp(kieBase, products));
+        long version = ruleSessions.swap(kieBase);
+        promotionMemo.invalidateAll();
+        incrementalSessions.disable();
+        pricedOrders.invalidateAll();
+        swapped.increment();
+        return version;
+    }
+
+    private void warmUp(KieBase kieBase, List<Product> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        SplittableRandom random = new SplittableRandom(warmupOrders);
+        for (int i = 0; i < warmupOrders; i++) {
+            Order order = new Order(i, new ArrayList<>());
+            for (Product product : products) {
+                if (random.nextBoolean()) {
+                    order.addQuantity(product, 1 + random.nextInt(MAX_SAMPLE_QUANTITY));
+                }
+            }
+            KieSession kieSession = kieBase.newKieSession();
+            try {
+                products.forEach(kieSession::insert);
+                kieSession.insert(order);
+                kieSession.fireAllRules();
+                order.getOrderTotal();
+            } catch (RuntimeException exception) {
+                throw new IllegalArgumentException("Sample order " + order + " cannot be priced: " + exception.getMessage(), exception);
+            } finally {
+                kieSession.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes per rule meters tagged with the rule name: {@code rules.activations} for every match created,
+ * {@code rules.fire} for the time spent in the consequence and {@code rules.facts.inserted} for facts the consequence
+ * inserted (facts inserted by the application are tagged {@code rule=none}).
+ * <p>
+ * One listener is shared by all sessions. A session fires on a single thread, so the start of the current firing is
+ * kept per thread. With debug enabled, every {@value #DEBUG_SAMPLING}th firing of a rule is logged.
+ */
+@Log4j2
+class RuleMetricsListener extends DefaultAgendaEventListener implements RuleRuntimeEventListener {
+    static final int DEBUG_SAMPLING = 100;
+    static final String NO_RULE = "none";
+    private final MeterRegistry meterRegistry;
+    private final Map<String, RuleMeters> meters = new ConcurrentHashMap<>();
+    private final ThreadLocal<long[]> fireStart = ThreadLocal.withInitial(() -> new long[1]);
+
+    RuleMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void matchCreated(MatchCreatedEvent event) {
+        meters(event.getMatch().getRule().getName()).activations().increment();
+    }
+
+    @Override
+    public void beforeMatchFired(BeforeMatchFiredEvent event) {
+        fireStart.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    public void afterMatchFired(AfterMatchFiredEvent event) {
+        long nanos = System.nanoTime() - fireStart.get()[0];
+        String rule = event.getMatch().getRule().getName();
+        RuleMeters ruleMeters = meters(rule);
+        ruleMeters.fire().record(nanos, TimeUnit.NANOSECONDS);
+        long firings = ruleMeters.firings().incrementAndGet();
+        if (log.isDebugEnabled() && firings % DEBUG_SAMPLING == 1) {
+            log.debug("Rule '{}' fired in {} us on {}, firing {}", rule, nanos / 1000, event.getMatch().getObjects(), firings);
+        }
+    }
+
+    @Override
+    public void objectInserted(ObjectInsertedEvent event) {
+        meters(event.getRule() == null ? NO_RULE : event.getRule().getName()).factsInserted().increment();
+    }
+
+    @Override
+    public void objectUpdated(ObjectUpdatedEvent event) {
+    }
+
+    @Override
+    public void objectDeleted(ObjectDeletedEvent event) {
+    }
+
+    private RuleMeters meters(String rule) {
+        return meters.computeIfAbsent(rule, name -> new RuleMeters(
+                Counter.builder("rules.activations")
+                        .tag("rule", name)
+                        .register(meterRegistry),
+                Timer.builder("rules.fire")
+                        .tag("rule", name)
+                        .register(meterRegistry),
+                Counter.builder("rules.facts.inserted")
+                        .tag("rule", name)
+                        .register(meterRegistry),
+                new AtomicLong()
+        ));
+    }
+
+    private record RuleMeters(Counter activations, Timer fire, Counter factsInserted, AtomicLong firings) {
+    }
+}
@@ -0,0 +1,204 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.kie.api.KieBase;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.KieSessionsPool;
+import org.kie.api.runtime.StatelessKieSession;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties.SessionMode;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the order rules in the session mode selected by {@code shopapp.rules.session-mode}. Every session reports to
+ * a {@link RuleMetricsListener}, the time from acquiring a session to returning it is published as
+ * {@code rules.sessions.lifetime}.
+ * <p>
+ * The rule base can be replaced at runtime with {@link #swap(KieBase)}. Every order is executed against the rule base
+ * that was current when it started, so orders in flight finish on the old rules while new ones use the new rules.
+ */
+@Component
+@ConditionalOnProperty(name = PromotionEngine.ENGINE_PROPERTY, havingValue = "drools", matchIfMissing = true)
+@Log4j2
+public class RuleSessions implements PromotionEngine {
+    private final SessionMode mode;
+    private final int poolSize;
+    private final AtomicReference<RuleBase> ruleBase;
+    private final Set<KieSession> pooledSessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger sessionsInUse = new AtomicInteger();
+    private final Timer acquireTimer;
+    private final Counter createdSessions;
+    private final Counter reusedSessions;
+    private final Timer lifetime;
+    private final RuleMetricsListener listener;
+
+    public RuleSessions(KieBase kieBase, RulesProperties properties, MeterRegistry meterRegistry) {
+        this.mode = properties.sessionMode();
+        this.poolSize = properties.poolSize();
+        this.listener = new RuleMetricsListener(meterRegistry);
+        this.ruleBase = new AtomicReference<>(newRuleBase(1, kieBase));
+        this.acquireTimer = Timer.builder("rules.sessions.acquire")
+                .tag("mode", mode.name())
+                .register(meterRegistry);
+        this.createdSessions = Counter.builder("rules.sessions.created")
+                .tag("mode", mode.name())
+                .register(meterRegistry);
+        this.reusedSessions = Counter.builder("rules.sessions.reused")
+                .tag("mode", mode.name())
+                .register(meterRegistry);
+        this.lifetime = Timer.builder("rules.sessions.lifetime")
+                .tag("mode", mode.name())
+                .register(meterRegistry);
+        Gauge.builder("rules.sessions.pool.size", pooledSessions, Set::size)
+                .tag("mode", mode.name())
+                .register(meterRegistry);
+        Gauge.builder("rules.sessions.in.use", sessionsInUse, AtomicInteger::get)
+                .tag("mode", mode.name())
+                .register(meterRegistry);
+        Gauge.builder("rules.version", ruleBase, current -> current.get().version())
+                .register(meterRegistry);
+        log.info("Rules are executed in {} session mode", mode);
+    }
+
+    public SessionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return version of the current rule base, {@code 1} for the rule base the application started with
+     */
+    public long getVersion() {
+        return ruleBase.get().version();
+    }
+
+    /**
+     * Makes {@code kieBase} the rule base of all orders executed from now on. The session pool of the previous rule
+     * base is shut down, sessions still in use are disposed instead of returned when their order completes.
+     *
+     * @return version of the new rule base
+     */
+    public long swap(KieBase kieBase) {
+        RuleBase previous;
+        RuleBase next;
+        synchronized (ruleBase) {
+            previous = ruleBase.get();
+            next = newRuleBase(previous.version() + 1, kieBase);
+            ruleBase.set(next);
+        }
+        pooledSessions.clear();
+        if (previous.pool() != null) {
+            previous.pool().shutdown();
+        }
+        log.info("Rule base version {} replaced version {}", next.version(), previous.version());
+        return next.version();
+    }
+
+    @Override
+    public Order execute(Order order, Collection<Product> products) {
+        RuleBase current = ruleBase.get();
+        if (mode == SessionMode.STATELESS) {
+            return executeStateless(current.statelessSession(), order, products);
+        }
+        long start = System.nanoTime();
+        KieSession kieSession = acquire(current);
+        sessionsInUse.incrementAndGet();
+        try {
+            products.forEach(kieSession::insert);
+            kieSession.insert(order);
+            kieSession.fireAllRules();
+        } finally {
+            sessionsInUse.decrementAndGet();
+            kieSession.dispose();
+            lifetime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return order;
+    }
+
+    private KieSession acquire(RuleBase current) {
+        return acquireTimer.record(() -> {
+            if (current.pool() == null) {
+                createdSessions.increment();
+                return withListener(current.kieBase().newKieSession());
+            }
+            KieSession kieSession = current.pool().newKieSession();
+            if (pooledSessions.add(kieSession)) {
+                createdSessions.increment();
+            } else {
+                reusedSessions.increment();
+            }
+            return withListener(kieSession);
+        });
+    }
+
+    private Order executeStateless(StatelessKieSession statelessSession, Order order, Collection<Product> products) {
+        List<Object> facts = new ArrayList<>(products.size() + 1);
+        facts.addAll(products);
+        facts.add(order);
+        reusedSessions.increment();
+        sessionsInUse.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            statelessSession.execute(facts);
+        } finally {
+            sessionsInUse.decrementAndGet();
+            lifetime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return order;
+    }
+
+    private RuleBase newRuleBase(long version, KieBase kieBase) {
+        return new RuleBase(version, kieBase,
+                mode == SessionMode.POOLED ? kieBase.newKieSessionsPool(poolSize) : null,
+                mode == SessionMode.STATELESS ? newStatelessSession(kieBase) : null);
+    }
+
+    private StatelessKieSession newStatelessSession(KieBase kieBase) {
+        StatelessKieSession session = kieBase.newStatelessKieSession();
+        session.addEventListener((AgendaEventListener) listener);
+        session.addEventListener((RuleRuntimeEventListener) listener);
+        return session;
+    }
+
+    /**
+     * A pooled session drops its listeners when it is reset on return, so the listener is added on every acquire.
+     */
+    private KieSession withListener(KieSession kieSession) {
+        kieSession.addEventListener((AgendaEventListener) listener);
+        kieSession.addEventListener((RuleRuntimeEventListener) listener);
+        return kieSession;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        KieSessionsPool pool = ruleBase.get().pool();
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Rule base together with the sessions built from it, {@code pool} and {@code statelessSession} are only set in
+     * their session mode.
+     */
+    private record RuleBase(long version, KieBase kieBase, KieSessionsPool pool, StatelessKieSession statelessSession) {
+    }
+}
@@ -1,13 +1,13 @@
-CREATE TABLE IF NOT EXISTS products (
+CREATE TABLE products (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     name VARCHAR(255) NOT NULL,
     price INT NOT NULL
 );
 
-CREATE TABLE IF NOT EXISTS order_items (
+CREATE TABLE order_items (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     product_id BIGINT NOT NULL,
     order_id BIGINT NOT NULL,
     quantity INT NOT NULL,
     FOREIGN KEY (product_id) REFERENCES products(id)
-);
\ No newline at end of file
+);
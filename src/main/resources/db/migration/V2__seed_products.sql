@@ -1 +1 @@
-INSERT INTO products (name, price) VALUES ('apple', 50), ('orange', 70);
\ No newline at end of file
+INSERT INTO products (name, price) VALUES ('apple', 50), ('orange', 70);
@@ -0,0 +1,2 @@
+-- One row per product in an order, lookups by order_id use the leading column of this index.
+ALTER TABLE order_items ADD CONSTRAINT uq_order_items_order_product UNIQUE (order_id, product_id);
@@ -0,0 +1,72 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.drools.compiler.kie.builder.impl.InternalKieModule;
+import org.drools.model.codegen.ExecutableModelProject;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.internal.io.ResourceFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Build time compiler of the order rules into a Drools executable model.
+ * <p>
+ * Run by the {@code compileRuleBase} Gradle task with the output directory followed by pairs of a DRL classpath
+ * resource and the name of the model index to write for it. Every DRL is compiled on its own, the compiled rule
+ * classes are written to the output directory together with the index listing the model classes that
+ * {@code OrderRulesEngine} instantiates at runtime.
+ */
+public class RuleBaseCompiler {
+    private static final String DROOLS_MODEL_FILE = "drools-model";
+    private static final String DROOLS_MODEL_VERSION = "Drools-Model-Version";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length % 2 == 0) {
+            throw new IllegalArgumentException("Usage: RuleBaseCompiler <output directory> (<drl resource> <model index>)...");
+        }
+        Path output = Path.of(args[0]);
+        for (int i = 1; i < args.length; i += 2) {
+            compile(args[i], output, output.resolve(args[i + 1]));
+        }
+    }
+
+    private static void compile(String drl, Path output, Path modelIndex) throws IOException {
+        long start = System.nanoTime();
+        KieServices kieServices = KieServices.Factory.get();
+        KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+        kieFileSystem.write(ResourceFactory.newClassPathResource(drl));
+        KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
+        kieBuilder.buildAll(ExecutableModelProject.class);
+        List<Message> errors = kieBuilder.getResults().getMessages(Message.Level.ERROR);
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Cannot compile " + drl + ": " + errors);
+        }
+
+        InternalKieModule kieModule = (InternalKieModule) kieBuilder.getKieModule();
+        for (String fileName : kieModule.getFileNames()) {
+            if (fileName.endsWith(".class")) {
+                write(output.resolve(fileName), kieModule.getBytes(fileName));
+            } else if (fileName.endsWith("/" + DROOLS_MODEL_FILE)) {
+                List<String> models = new String(kieModule.getBytes(fileName), StandardCharsets.UTF_8).lines()
+                        .filter(line -> !line.isBlank() && !line.startsWith(DROOLS_MODEL_VERSION))
+                        .toList();
+                write(modelIndex, String.join("\n", models).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (!Files.exists(modelIndex)) {
+            throw new IllegalStateException("No executable model was generated for " + drl);
+        }
+        System.out.printf("Compiled %s into %s in %d ms%n", drl, output, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void write(Path path, byte[] bytes) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, bytes);
+    }
+}
@@ -1,15 +1,22 @@
 package pl.dexbtyes.shopapp.configuration;
 
 import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.time.Duration;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -18,6 +25,10 @@ class MicrometerConfigTest {
     Meter.Id meterId;
     @Mock
     DistributionStatisticConfig config;
+    @Mock
+    ConnectionFactory connectionFactory;
+    @Mock
+    Connection connection;
     double[] percentiles = {0.5, 0.75, 0.9, 0.95, 0.99};
     double[] slas = {1000000.0, 1.0E7, 5.0E7, 1.0E8, 3.0E8, 5.0E8, 1.0E9, 3.0E9, 5.0E9};
 
@@ -35,4 +46,46 @@ class MicrometerConfigTest {
         assertThat(newConfig.getServiceLevelObjectiveBoundaries()).isEqualTo(slas);
         assertThat(newConfig.isPercentileHistogram()).isFalse();
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldConfigureConnectionAcquireDistribution() {
+        when(meterId.getName()).thenReturn(MicrometerConfig.R2DBC_POOL_ACQUIRE);
+
+        MicrometerConfig.MicrometerFilter filter = new MicrometerConfig.MicrometerFilter();
+        DistributionStatisticConfig newConfig = filter.configure(meterId, config);
+
+        assertThat(newConfig.getPercentiles()).isEqualTo(new double[]{0.5, 0.9, 0.99});
+        assertThat(newConfig.getServiceLevelObjectiveBoundaries()).hasLength(8);
+    }
+
+    @Test
+    void shouldTimeConnectionAcquisition() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        doReturn(Mono.just(connection), Mono.error(new IllegalStateException("pool exhausted")))
+                .when(connectionFactory).create();
+
+        MicrometerConfig.TimedConnectionFactory timedConnectionFactory =
+                new MicrometerConfig.TimedConnectionFactory(connectionFactory, meterRegistry, "connectionFactory");
+
+        Mono.<Connection>from(timedConnectionFactory.create())
+                .as(StepVerifier::create)
+                .expectNext(connection)
+                .verifyComplete();
+        Mono.<Connection>from(timedConnectionFactory.create())
+                .as(StepVerifier::create)
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertThat(timedConnectionFactory.unwrap()).isSameInstanceAs(connectionFactory);
+        assertThat(acquisitions(meterRegistry, "success")).isEqualTo(1);
+        assertThat(acquisitions(meterRegistry, "failure")).isEqualTo(1);
+    }
+
+    private static long acquisitions(MeterRegistry meterRegistry, String outcome) {
+        return meterRegistry.get(MicrometerConfig.R2DBC_POOL_ACQUIRE)
+                .tag("name", "connectionFactory")
+                .tag("outcome", outcome)
+                .timer()
+                .count();
+    }
+}
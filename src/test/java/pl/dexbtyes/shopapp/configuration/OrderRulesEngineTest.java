@@ -0,0 +1,81 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.kie.api.KieBase;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.runtime.KieSession;
+import org.springframework.core.io.ClassPathResource;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class OrderRulesEngineTest {
+    Product apple = new Product(50, "apple");
+    Product orange = new Product(70, "orange");
+
+    @Test
+    void shouldShipExecutableModel() {
+        assertThat(new ClassPathResource(OrderRulesEngine.ORDER_MODEL).exists()).isTrue();
+    }
+
+    @Test
+    void shouldLoadSameRulesAsDrl() {
+        KieBase executableModel = OrderRulesEngine.loadExecutableModel(new ClassPathResource(OrderRulesEngine.ORDER_MODEL));
+        KieBase drl = OrderRulesEngine.compileDrl();
+
+        assertThat(ruleNames(executableModel)).containsExactlyElementsIn(ruleNames(drl));
+        assertThat(price(executableModel).items()).containsExactlyElementsIn(price(drl).items());
+    }
+
+    @Test
+    void shouldLoadSameIncrementalRulesAsDrl() {
+        KieBase executableModel = OrderRulesEngine.loadRuleBase(OrderRulesEngine.INCREMENTAL_ORDER_CONFIG,
+                OrderRulesEngine.INCREMENTAL_ORDER_MODEL, true);
+        KieBase drl = OrderRulesEngine.compileDrl(OrderRulesEngine.INCREMENTAL_ORDER_CONFIG);
+
+        assertThat(new ClassPathResource(OrderRulesEngine.INCREMENTAL_ORDER_MODEL).exists()).isTrue();
+        assertThat(ruleNames(executableModel)).containsExactlyElementsIn(ruleNames(drl));
+        assertThat(ruleNames(executableModel)).containsExactlyElementsIn(ruleNames(OrderRulesEngine.compileDrl()).stream()
+                .filter(rule -> !rule.equals("Explode Cart") && !rule.equals("Do checkout"))
+                .toList());
+    }
+
+    @Test
+    void shouldFallBackToDrlWhenNotPrecompiled() {
+        KieBase kieBase = new OrderRulesEngine()
+                .kieBase(new RulesProperties(RulesProperties.SessionMode.POOLED, 1, false));
+
+        assertThat(price(kieBase).items()).containsExactly(
+                new LineItem(apple, 4, 30, 2),
+                LineItem.builder().product(orange).quantity(3).build(),
+                new LineItem(orange, 1, 100, 1)
+        );
+    }
+
+    private Order price(KieBase kieBase) {
+        Order order = new Order(1, new ArrayList<>());
+        order.addQuantity(apple, 4);
+        order.addQuantity(orange, 3);
+        KieSession session = kieBase.newKieSession();
+        try {
+            List.of(apple, orange).forEach(session::insert);
+            session.insert(order);
+            session.fireAllRules();
+        } finally {
+            session.dispose();
+        }
+        return order;
+    }
+
+    private List<String> ruleNames(KieBase kieBase) {
+        return kieBase.getKiePackages().stream()
+                .flatMap(kiePackage -> kiePackage.getRules().stream())
+                .map(Rule::getName)
+                .toList();
+    }
+}
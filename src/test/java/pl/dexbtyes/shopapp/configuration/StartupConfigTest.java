@@ -0,0 +1,25 @@
+package pl.dexbtyes.shopapp.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.kie.api.KieBase;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
+import pl.dexbtyes.shopapp.service.OrderService;
+import pl.dexbtyes.shopapp.service.PricedOrderCache;
+import pl.dexbtyes.shopapp.service.RuleSessions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class StartupConfigTest {
+
+    @Test
+    void shouldKeepPricingBeansEager() {
+        LazyInitializationExcludeFilter filter = StartupConfig.eagerPricingBeans();
+
+        assertThat(filter.isExcluded("kieBase", null, KieBase.class)).isTrue();
+        assertThat(filter.isExcluded("ruleSessions", null, RuleSessions.class)).isTrue();
+        assertThat(filter.isExcluded("flywayInitializer", null, FlywayMigrationInitializer.class)).isTrue();
+        assertThat(filter.isExcluded("orderService", null, OrderService.class)).isFalse();
+        assertThat(filter.isExcluded("pricedOrderCache", null, PricedOrderCache.class)).isFalse();
+    }
+}
@@ -0,0 +1,83 @@
+package pl.dexbtyes.shopapp.controller;
+
+import org.junit.jupiter.api.Test;
+import pl.dexbtyes.shopapp.configuration.AdmissionProperties;
+
+import java.time.Duration;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class AdaptiveConcurrencyLimitTest {
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void shouldRejectRequestsOverTheLimit() {
+        AdaptiveConcurrencyLimit limit = newLimit(2, 1, 10);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(limit.getInFlight()).isEqualTo(2);
+
+        limit.releaseIgnored();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRaiseLimitWhenFastRequestsUseIt() {
+        AdaptiveConcurrencyLimit limit = newLimit(4, 1, 6);
+
+        for (int i = 0; i < 10; i++) {
+            acquireAll(limit);
+            for (int j = limit.getInFlight(); j > 0; j--) {
+                limit.release(FAST, false);
+            }
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(6);
+    }
+
+    @Test
+    void shouldKeepLimitWhenItIsMostlyIdle() {
+        AdaptiveConcurrencyLimit limit = newLimit(10, 1, 100);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+            limit.release(FAST, false);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void shouldLowerLimitWhenRequestsAreSlowOrOverloaded() {
+        AdaptiveConcurrencyLimit limit = newLimit(100, 20, 200);
+
+        limit.tryAcquire();
+        limit.release(SLOW, false);
+        assertThat(limit.getLimit()).isEqualTo(90);
+        limit.tryAcquire();
+        limit.release(FAST, true);
+        assertThat(limit.getLimit()).isEqualTo(81);
+
+        for (int i = 0; i < 100; i++) {
+            limit.tryAcquire();
+            limit.release(SLOW, false);
+        }
+        assertThat(limit.getLimit()).isEqualTo(20);
+        assertThat(limit.getInFlight()).isEqualTo(0);
+    }
+
+    private static void acquireAll(AdaptiveConcurrencyLimit limit) {
+        while (limit.tryAcquire()) {
+            assertThat(limit.getInFlight()).isAtMost(limit.getLimit());
+        }
+    }
+
+    private static AdaptiveConcurrencyLimit newLimit(int initialLimit, int minLimit, int maxLimit) {
+        return new AdaptiveConcurrencyLimit(new AdmissionProperties.Limit(initialLimit, minLimit, maxLimit,
+                Duration.ofMillis(100)));
+    }
+}
@@ -0,0 +1,142 @@
+package pl.dexbtyes.shopapp.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import pl.dexbtyes.shopapp.configuration.AdmissionProperties;
+import pl.dexbtyes.shopapp.configuration.IdempotencyProperties;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.exception.ControllerAdvisor;
+import pl.dexbtyes.shopapp.exception.RequestRejectedException;
+import pl.dexbtyes.shopapp.service.IdempotencyStore;
+import pl.dexbtyes.shopapp.service.OrderService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionFilterTest {
+    @Mock
+    OrderService orderService;
+    SimpleMeterRegistry meterRegistry;
+    AdmissionFilter admissionFilter;
+    WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        AdmissionProperties.Limit single = new AdmissionProperties.Limit(1, 1, 1, Duration.ofSeconds(1));
+        admissionFilter = newAdmissionFilter(single);
+        OrderController orderController = new OrderController(orderService,
+                new IdempotencyStore(new IdempotencyProperties(100, Duration.ofMinutes(1)), meterRegistry));
+        webTestClient = WebTestClient.bindToController(orderController)
+                .webFilter(admissionFilter)
+                .controllerAdvice(new ControllerAdvisor())
+                .build();
+    }
+
+    @Test
+    void shouldRejectPricingRequestsOverTheLimit() {
+        Sinks.Empty<Void> pricing = Sinks.empty();
+        Disposable running = admissionFilter.filter(
+                MockServerWebExchange.from(MockServerHttpRequest.get("/orders/v1/getOrderSummary/1")),
+                exchange -> pricing.asMono()).subscribe();
+        assertThat(gauge("admission.in-flight", AdmissionFilter.PRICING)).isEqualTo(1.0);
+
+        webTestClient.get()
+                .uri("/orders/v1/getOrderSummary/2")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().exists(HttpHeaders.RETRY_AFTER)
+                .expectBody(Status.class)
+                .isEqualTo(new Status(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                        new RequestRejectedException(AdmissionFilter.PRICING).getMessage()));
+        assertThat(meterRegistry.get("admission.rejected").tag("limit", AdmissionFilter.PRICING).counter().count())
+                .isEqualTo(1.0);
+
+        pricing.tryEmitEmpty();
+        assertThat(running.isDisposed()).isTrue();
+        when(orderService.getOrderById(2)).thenReturn(Mono.just(new Order(2, new ArrayList<>())));
+        webTestClient.get()
+                .uri("/orders/v1/getOrderSummary/2")
+                .exchange()
+                .expectStatus().isOk();
+        assertThat(gauge("admission.in-flight", AdmissionFilter.PRICING)).isEqualTo(0.0);
+    }
+
+    @Test
+    void shouldLimitWritesApartFromPricingAndNeverLimitOrderIds() {
+        Sinks.Empty<Void> pricing = Sinks.empty();
+        admissionFilter.filter(
+                MockServerWebExchange.from(MockServerHttpRequest.get("/orders/v1/getOrders")),
+                exchange -> pricing.asMono()).subscribe();
+        when(orderService.addItemsForOrder(1L, 1L, 1))
+                .thenReturn(Mono.just(new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER)));
+        when(orderService.getOrderIds(null, null)).thenReturn(Flux.just(1L));
+
+        webTestClient.put()
+                .uri("/orders/v1/add/1?productId=1")
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.get()
+                .uri("/orders/v1/getOrderIds")
+                .exchange()
+                .expectStatus().isOk();
+
+        assertThat(gauge("admission.limit", AdmissionFilter.WRITE)).isEqualTo(1.0);
+        assertThat(meterRegistry.get("admission.rejected").tag("limit", AdmissionFilter.WRITE).counter().count())
+                .isEqualTo(0.0);
+        pricing.tryEmitEmpty();
+    }
+
+    @Test
+    void shouldNotLowerPricingLimitWhenListingsAreSlow() {
+        admissionFilter = newAdmissionFilter(new AdmissionProperties.Limit(4, 1, 8, Duration.ofMillis(20)));
+
+        for (int i = 0; i < 5; i++) {
+            admissionFilter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/orders/v1/getOrders")),
+                            exchange -> Mono.delay(Duration.ofMillis(50)).then(exchange.getResponse().setComplete()))
+                    .block(Duration.ofSeconds(5));
+        }
+
+        assertThat(gauge("admission.limit", AdmissionFilter.LISTING)).isLessThan(4.0);
+        assertThat(gauge("admission.limit", AdmissionFilter.PRICING)).isEqualTo(4.0);
+        assertThat(gauge("admission.in-flight", AdmissionFilter.LISTING)).isEqualTo(0.0);
+    }
+
+    @Test
+    void shouldNotCountTimeSpentWritingCommittedResponse() {
+        admissionFilter = newAdmissionFilter(new AdmissionProperties.Limit(2, 1, 8, Duration.ofMillis(20)));
+
+        admissionFilter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/orders/v1/getOrderSummary/1")),
+                        exchange -> exchange.getResponse().setComplete().then(Mono.delay(Duration.ofMillis(50))).then())
+                .block(Duration.ofSeconds(5));
+
+        assertThat(gauge("admission.limit", AdmissionFilter.PRICING)).isEqualTo(3.0);
+    }
+
+    private AdmissionFilter newAdmissionFilter(AdmissionProperties.Limit limit) {
+        meterRegistry = new SimpleMeterRegistry();
+        return new AdmissionFilter(new AdmissionProperties(true, limit, limit, limit), new ObjectMapper(), meterRegistry);
+    }
+
+    private double gauge(String name, String limit) {
+        return meterRegistry.get(name).tag("limit", limit).gauge().value();
+    }
+}
@@ -1,5 +1,6 @@
 package pl.dexbtyes.shopapp.controller;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,21 +8,32 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import pl.dexbtyes.shopapp.configuration.IdempotencyProperties;
+import pl.dexbtyes.shopapp.dto.CartLine;
 import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.OrderPage;
 import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.exception.ControllerAdvisor;
+import pl.dexbtyes.shopapp.exception.PricingOverloadedException;
 import pl.dexbtyes.shopapp.exception.QuantityTooLowException;
+import pl.dexbtyes.shopapp.service.IdempotencyStore;
 import pl.dexbtyes.shopapp.service.OrderService;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -33,7 +45,8 @@ class OrderControllerTest {
 
     @BeforeEach
     void setUp() {
-        orderController = new OrderController(orderService);
+        orderController = new OrderController(orderService,
+                new IdempotencyStore(new IdempotencyProperties(100, Duration.ofMinutes(1)), new SimpleMeterRegistry()));
     }
 
     @AfterEach
@@ -50,7 +63,7 @@ class OrderControllerTest {
         when(orderService.addItemsForOrder(1L, 1L, 1))
                 .thenReturn(Mono.just(new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER)));
 
-        orderController.addProductToOrder(1L, 1L, 1)
+        orderController.addProductToOrder(1L, 1L, 1, null)
                 .as(StepVerifier::create)
                 .assertNext(status -> {
                     assertThat(status).isNotNull();
@@ -69,11 +82,11 @@ class OrderControllerTest {
         when(orderService.addItemsForOrder(1L, 1L, 0))
                 .thenReturn(Mono.error(exception));
 
-        orderController.addProductToOrder(1L, 1L, -1)
+        orderController.addProductToOrder(1L, 1L, -1, null)
                 .as(StepVerifier::create)
                 .expectError(QuantityTooLowException.class);
 
-        orderController.addProductToOrder(1L, 1L, 0)
+        orderController.addProductToOrder(1L, 1L, 0, null)
                 .as(StepVerifier::create)
                 .expectError(QuantityTooLowException.class);
     }
@@ -83,7 +96,7 @@ class OrderControllerTest {
         when(orderService.addItemsForOrder(1L, 1L, 1))
                 .thenReturn(Mono.just(new Status(HttpStatus.NOT_FOUND.value(), OrderService.PRODUCT_NOT_FOUND)));
 
-        orderController.addProductToOrder(1L, 1L, 1)
+        orderController.addProductToOrder(1L, 1L, 1, null)
                 .as(StepVerifier::create)
                 .assertNext(status -> {
                     assertThat(status).isNotNull();
@@ -93,6 +106,20 @@ class OrderControllerTest {
                 .verifyComplete();
     }
 
+    @Test
+    void shouldAddProductsToOrder() {
+        List<CartLine> lines = List.of(new CartLine(1L, 2), new CartLine(2L, 1));
+        Status status = new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER);
+
+        when(orderService.addItemsForOrder(1L, lines))
+                .thenReturn(Flux.just(status, status));
+
+        orderController.addProductsToOrder(1L, lines)
+                .as(StepVerifier::create)
+                .expectNext(status, status)
+                .verifyComplete();
+    }
+
     @Test
     void shouldGetAllOrders() {
         when(orderService.getOrders())
@@ -125,17 +152,83 @@ class OrderControllerTest {
                 .expectError(IllegalArgumentException.class);
     }
 
+    @Test
+    void shouldNotAddProductAgainWhenRequestIsRetriedWithSameIdempotencyKey() {
+        when(orderService.addItemsForOrder(1L, 1L, 2))
+                .thenReturn(Mono.just(new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER)));
+        WebTestClient webTestClient = WebTestClient.bindToController(orderController)
+                .controllerAdvice(new ControllerAdvisor())
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            webTestClient.put()
+                    .uri("/orders/v1/add/1?productId=1&quantity=2")
+                    .header(OrderController.IDEMPOTENCY_KEY, "6f1c1f43")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(Status.class)
+                    .isEqualTo(new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER));
+        }
+        webTestClient.put()
+                .uri("/orders/v1/add/1?productId=1&quantity=3")
+                .header(OrderController.IDEMPOTENCY_KEY, "6f1c1f43")
+                .exchange()
+                .expectBody(Status.class)
+                .value(status -> assertThat(status.code()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY.value()));
+
+        verify(orderService, times(1)).addItemsForOrder(1L, 1L, 2);
+    }
+
+    @Test
+    void shouldReturnServiceUnavailableWhenPricingIsOverloaded() {
+        when(orderService.getOrderById(3))
+                .thenReturn(Mono.error(new PricingOverloadedException()));
+
+        WebTestClient.bindToController(orderController)
+                .controllerAdvice(new ControllerAdvisor())
+                .build()
+                .get()
+                .uri("/orders/v1/getOrderSummary/3")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().exists(HttpHeaders.RETRY_AFTER)
+                .expectBody(Status.class)
+                .value(status -> assertThat(status.code()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value()));
+    }
+
     @Test
     void shouldReturnProperOrderIds() {
-        when(orderService.getOrders())
-                .thenReturn(Flux.fromIterable(getOrderList(10)));
+        when(orderService.getOrderIds(null, null))
+                .thenReturn(Flux.range(0, 10).map(Long::valueOf));
 
-        orderController.getOrderIds()
+        orderController.getOrderIds(null, null)
                 .as(StepVerifier::create)
                 .expectNext(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)
                 .verifyComplete();
     }
 
+    @Test
+    void shouldGetOrdersPage() {
+        when(orderService.getOrdersPage(4L, 2))
+                .thenReturn(Mono.just(new OrderPage(getOrderList(2), 1L)));
+
+        orderController.getOrdersPage(4L, 2)
+                .as(StepVerifier::create)
+                .expectNext(new OrderPage(getOrderList(2), 1L))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldStreamOrders() {
+        when(orderService.streamOrders(null))
+                .thenReturn(Flux.fromIterable(getOrderList(3)));
+
+        orderController.streamOrders(null)
+                .as(StepVerifier::create)
+                .expectNext(getOrderList(3).toArray(new Order[3]))
+                .verifyComplete();
+    }
+
     private static List<Order> getOrderList(int ordersCount) {
         return IntStream.range(0, ordersCount)
                 .boxed()
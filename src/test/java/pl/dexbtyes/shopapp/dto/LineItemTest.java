@@ -23,13 +23,13 @@ class LineItemTest {
 
     @Test
     void shouldCreateAnObject() {
-        assertThat(new LineItem(apple, 0)).isNotNull();
+        assertThat(new LineItem(apple, 1, 0, 0)).isNotNull();
     }
 
     @Test
     void lineItemsShouldBeEqual() {
-        LineItem one = new LineItem(apple, 0);
-        LineItem two = new LineItem(apple, 0);
+        LineItem one = new LineItem(apple, 1, 0, 0);
+        LineItem two = new LineItem(apple, 1, 0, 0);
 
         assertThat(one).isEqualTo(one);
         assertThat(one.equals(two)).isTrue(); //lombok sonar requirement to count as covered
@@ -38,9 +38,9 @@ class LineItemTest {
 
     @Test
     void lineItemsShouldNotBeEqual() {
-        LineItem one = new LineItem(apple, 0);
-        LineItem two = new LineItem(apple, 1);
-        LineItem three = new LineItem(orange, 0);
+        LineItem one = new LineItem(apple, 1, 0, 0);
+        LineItem two = new LineItem(apple, 1, 1, 1);
+        LineItem three = new LineItem(orange, 1, 0, 0);
 
         assertThat(one.equals(two)).isFalse(); //sonar coverage
         assertThat(one).isNotEqualTo(two);
@@ -50,18 +50,19 @@ class LineItemTest {
 
     @Test
     void toStringShouldProduceProperText() {
-        LineItem one = new LineItem(apple, 0);
+        LineItem one = new LineItem(apple, 1, 0, 0);
 
-        assertThat(one.toString()).isEqualTo("LineItem(product=Product[basePrice=50, name=apple], discount=0)");
+        assertThat(one.toString()).isEqualTo("LineItem(product=Product[basePrice=50, name=apple], quantity=1, discount=0, discountedQuantity=0)");
     }
 
     @Test
     void builderShouldProduceObject() {
         LineItem built = LineItem.builder()
                 .product(apple)
+                .quantity(1)
                 .discount(0)
                 .build();
-        LineItem expected = new LineItem(apple, 0);
+        LineItem expected = new LineItem(apple, 1, 0, 0);
 
         assertThat(built).isNotNull();
         assertThat(built).isEqualTo(expected);
@@ -70,7 +71,7 @@ class LineItemTest {
     @Test
     void shouldThrowExceptionOnTooBigDiscountValue() {
         assertThrows(IllegalArgumentException.class, () -> {
-            LineItem item = new LineItem(apple, 0);
+            LineItem item = new LineItem(apple, 1, 0, 0);
             item.setDiscount(101);
         });
     }
@@ -78,16 +79,49 @@ class LineItemTest {
     @Test
     void shouldThrowExceptionOnNegativeDiscountValue() {
         assertThrows(IllegalArgumentException.class, () -> {
-            LineItem item = new LineItem(apple, 0);
+            LineItem item = new LineItem(apple, 1, 0, 0);
             item.setDiscount(-1);
         });
     }
 
+    @Test
+    void shouldThrowExceptionOnNegativeQuantity() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            LineItem item = new LineItem(apple, 1, 0, 0);
+            item.setQuantity(-1);
+        });
+    }
+
+    @Test
+    void shouldThrowExceptionOnDiscountedQuantityBiggerThanQuantity() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            LineItem item = new LineItem(apple, 2, 30, 0);
+            item.setDiscountedQuantity(3);
+        });
+    }
+
     @Test
     void shouldCalculateProperTotalPrice() {
-        LineItem item1 = new LineItem(apple, 0);
+        LineItem item1 = new LineItem(apple, 1, 0, 0);
         item1.setDiscount(30);
+        item1.setDiscountedQuantity(1);
 
         assertThat(item1.getTotal()).isEqualTo(35);
     }
+
+    @Test
+    void shouldCalculateTotalPriceForDiscountedAndUndiscountedUnits() {
+        LineItem item = new LineItem(apple, 5, 30, 2);
+
+        assertThat(item.getUndiscountedQuantity()).isEqualTo(3);
+        assertThat(item.getTotal()).isEqualTo(3 * 50 + 2 * 35);
+    }
+
+    @Test
+    void shouldCalculateTotalPriceForFreeUnits() {
+        LineItem item = new LineItem(orange, 2, 100, 2);
+
+        assertThat(item.getUndiscountedQuantity()).isEqualTo(0);
+        assertThat(item.getTotal()).isEqualTo(0);
+    }
 }
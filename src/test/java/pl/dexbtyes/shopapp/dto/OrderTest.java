@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -47,8 +48,38 @@ class OrderTest {
         assertThat(bigOrder.items()).containsAtLeastElementsIn(IntStream.range(0,  11).boxed().map(i -> getApple()).collect(Collectors.toList()));
     }
 
+    @Test
+    void shouldAddQuantityToExistingUndiscountedItem() {
+        Product apple = new Product(50, "apple");
+        Product orange = new Product(70, "orange");
+        Order order = new Order(1, new ArrayList<>())
+                .addQuantity(apple, 2)
+                .addQuantity(orange, 1)
+                .addQuantity(apple, 3);
+
+        assertThat(order.items()).containsExactly(
+                LineItem.builder().product(apple).quantity(5).build(),
+                LineItem.builder().product(orange).quantity(1).build()
+        );
+        assertThat(order.getOrderTotal()).isEqualTo(5 * 50 + 70);
+    }
+
+    @Test
+    void shouldNotAddQuantityToDiscountedItem() {
+        Product orange = new Product(70, "orange");
+        Order order = new Order(1, new ArrayList<>(List.of(new LineItem(orange, 1, 100, 1))))
+                .addQuantity(orange, 2);
+
+        assertThat(order.items()).containsExactly(
+                new LineItem(orange, 1, 100, 1),
+                LineItem.builder().product(orange).quantity(2).build()
+        );
+        assertThat(order.getOrderTotal()).isEqualTo(140);
+    }
+
     private static LineItem getApple() {
         return LineItem.builder()
+                .quantity(1)
                 .discount(0)
                 .product(
                         Product.builder()
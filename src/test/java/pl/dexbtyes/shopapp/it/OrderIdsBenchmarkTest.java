@@ -0,0 +1,110 @@
+package pl.dexbtyes.shopapp.it;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.repository.OrderItemsRepository;
+import pl.dexbtyes.shopapp.service.OrderService;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.function.Supplier;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Checks that order ids are read without pricing any order, and compares reading them with a {@code SELECT DISTINCT}
+ * against pricing every order and keeping its id, which is how {@code getOrderIds} used to be served. The comparison
+ * measures wall-clock time, so it only runs with {@code ./gradlew test -Pbenchmarks}. All orders have the same items,
+ * so the promotion memo is disabled for every order to be evaluated as it was back then.
+ */
+@SpringBootTest(properties = "shopapp.promotions.memo.maximum-size=0")
+class OrderIdsBenchmarkTest {
+    private static final Logger log = LogManager.getLogger(OrderIdsBenchmarkTest.class);
+    private static final int ORDERS = 5_000;
+    private static final int ROUNDS = 5;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    OrderItemsRepository orderItemsRepository;
+    @Autowired
+    DatabaseClient databaseClient;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        databaseClient.sql("""
+                        INSERT INTO order_items (product_id, order_id, quantity)
+                        SELECT 1, X, 3 FROM SYSTEM_RANGE(1, :orders)
+                        UNION ALL
+                        SELECT 2, X, 2 FROM SYSTEM_RANGE(1, :orders)
+                        """)
+                .bind("orders", ORDERS)
+                .then()
+                .as(StepVerifier::create)
+                .verifyComplete();
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderItemsRepository.deleteAll()
+                .as(StepVerifier::create)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldReadOrderIdsWithoutPricingOrders() {
+        long evaluations = ruleSessionsAcquired();
+
+        orderService.getOrderIds(null, null)
+                .as(StepVerifier::create)
+                .expectNextCount(ORDERS)
+                .verifyComplete();
+        assertThat(ruleSessionsAcquired()).isEqualTo(evaluations);
+
+        orderService.getOrders()
+                .as(StepVerifier::create)
+                .expectNextCount(ORDERS)
+                .verifyComplete();
+        assertThat(ruleSessionsAcquired()).isEqualTo(evaluations + ORDERS);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void shouldReadOrderIdsMuchFasterThanPricingOrders() {
+        long distinct = bestOf(() -> orderService.getOrderIds(null, null));
+        long priced = bestOf(() -> orderService.getOrders().map(Order::id));
+
+        log.info("{} order ids: SELECT DISTINCT {} ms, priced orders {} ms", ORDERS, distinct / 1_000_000, priced / 1_000_000);
+        assertThat(distinct * 5).isLessThan(priced);
+    }
+
+    private long ruleSessionsAcquired() {
+        return meterRegistry.get("rules.sessions.acquire").timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+    }
+
+    private static long bestOf(Supplier<Flux<Long>> orderIds) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            orderIds.get()
+                    .as(StepVerifier::create)
+                    .expectNextCount(ORDERS)
+                    .verifyComplete();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
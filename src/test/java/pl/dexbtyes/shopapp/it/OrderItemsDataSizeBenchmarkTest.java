@@ -0,0 +1,124 @@
+package pl.dexbtyes.shopapp.it;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Example;
+import org.springframework.r2dbc.core.DatabaseClient;
+import pl.dexbtyes.shopapp.entity.OrderItemsEntity;
+import pl.dexbtyes.shopapp.repository.OrderItemsRepository;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Measures the median latency of reading the items of one order, which is what {@code getOrderById} does, while the
+ * {@code order_items} table grows. The regular test run only checks that the lookup uses the index, the latency
+ * sweep runs with {@code -PbenchmarkSizes=10000,100000,1000000,10000000}, seeding takes roughly 20 seconds per
+ * million rows.
+ */
+@SpringBootTest
+class OrderItemsDataSizeBenchmarkTest {
+    private static final Logger log = LogManager.getLogger(OrderItemsDataSizeBenchmarkTest.class);
+    private static final String SIZES = "shopapp.benchmark.sizes";
+    private static final int SEED_CHUNK = 100_000;
+    private static final int WARMUP_LOOKUPS = 500;
+    private static final int LOOKUPS = 2_000;
+    @Autowired
+    OrderItemsRepository orderItemsRepository;
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @AfterEach
+    void tearDown() {
+        truncate();
+    }
+
+    @Test
+    void shouldUseIndexForLookupsByOrderId() {
+        databaseClient.sql("EXPLAIN SELECT * FROM order_items WHERE order_id = 1")
+                .map(row -> row.get(0, String.class))
+                .one()
+                .as(StepVerifier::create)
+                .assertNext(plan -> assertThat(plan.toUpperCase()).contains("UQ_ORDER_ITEMS_ORDER_PRODUCT"))
+                .verifyComplete();
+    }
+
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = SIZES, matches = ".+")
+    void shouldKeepLookupLatencyFlatWhenTableGrows() {
+        List<Integer> sizes = Arrays.stream(System.getProperty(SIZES).split(","))
+                .map(String::trim)
+                .map(Integer::valueOf)
+                .sorted()
+                .toList();
+        Map<Integer, Long> medians = new LinkedHashMap<>();
+
+        for (int size : sizes) {
+            truncate();
+            seed(size);
+            medians.put(size, medianLookupNanos(size / 2));
+            log.info("order_items rows: {}, median lookup: {} us", size, medians.get(size) / 1_000);
+        }
+
+        long smallest = medians.get(sizes.get(0));
+        long largest = medians.get(sizes.get(sizes.size() - 1));
+        assertThat(largest).isLessThan(smallest * 5);
+    }
+
+    private void seed(int rows) {
+        for (int from = 0; from < rows; from += SEED_CHUNK) {
+            databaseClient.sql("""
+                            INSERT INTO order_items (product_id, order_id, quantity)
+                            SELECT MOD(X, 2) + 1, X / 2, 1 FROM SYSTEM_RANGE(:from, :to)
+                            """)
+                    .bind("from", from)
+                    .bind("to", Math.min(rows, from + SEED_CHUNK) - 1)
+                    .then()
+                    .as(StepVerifier::create)
+                    .verifyComplete();
+        }
+    }
+
+    private void truncate() {
+        databaseClient.sql("TRUNCATE TABLE order_items")
+                .then()
+                .as(StepVerifier::create)
+                .verifyComplete();
+    }
+
+    private long medianLookupNanos(int orders) {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < WARMUP_LOOKUPS; i++) {
+            lookup(random.nextInt(orders));
+        }
+        long[] latencies = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            long orderId = random.nextInt(orders);
+            long start = System.nanoTime();
+            lookup(orderId);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies[LOOKUPS / 2];
+    }
+
+    private void lookup(long orderId) {
+        orderItemsRepository.findAll(Example.of(OrderItemsEntity.builder().orderId(orderId).build()))
+                .as(StepVerifier::create)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+}
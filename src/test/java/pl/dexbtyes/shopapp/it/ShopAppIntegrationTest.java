@@ -1,6 +1,8 @@
 package pl.dexbtyes.shopapp.it;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,21 +14,29 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import pl.dexbtyes.shopapp.dto.CartLine;
 import pl.dexbtyes.shopapp.dto.LineItem;
 import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.OrderPage;
 import pl.dexbtyes.shopapp.dto.Product;
 import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.exception.PageSizeOutOfRangeException;
 import pl.dexbtyes.shopapp.exception.ProductNotFoundException;
 import pl.dexbtyes.shopapp.exception.QuantityTooLowException;
 import pl.dexbtyes.shopapp.exception.ShopappException;
 import pl.dexbtyes.shopapp.repository.OrderItemsRepository;
 import pl.dexbtyes.shopapp.service.OrderService;
+import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static com.google.common.truth.Truth.assertThat;
 
@@ -42,6 +52,8 @@ public class ShopAppIntegrationTest {
     OrderItemsRepository orderItemsRepository;
     @Autowired
     private ConnectionFactory connectionFactory;
+    @Autowired
+    MeterRegistry meterRegistry;
 
     @BeforeEach
     void setUp() {
@@ -143,9 +155,11 @@ public class ShopAppIntegrationTest {
                     assertThat(order).isNotNull();
                     assertThat(order.id()).isEqualTo(1L);
                     assertThat(order.items()).isNotEmpty();
-                    assertThat(order.items().size()).isEqualTo(2);
-                    assertThat(order.items().get(1).getDiscount()).isEqualTo(30);
-                    assertThat(order.items().get(1).getTotal()).isEqualTo((int) (50 * 0.7));
+                    assertThat(order.items().size()).isEqualTo(1);
+                    assertThat(order.items().get(0).getQuantity()).isEqualTo(2);
+                    assertThat(order.items().get(0).getDiscount()).isEqualTo(30);
+                    assertThat(order.items().get(0).getDiscountedQuantity()).isEqualTo(1);
+                    assertThat(order.items().get(0).getTotal()).isEqualTo(50 + (int) (50 * 0.7));
                     assertThat(order.getOrderTotal()).isEqualTo(85);
                 })
                 .verifyComplete();
@@ -174,9 +188,11 @@ public class ShopAppIntegrationTest {
                     assertThat(order).isNotNull();
                     assertThat(order.id()).isEqualTo(101L);
                     assertThat(order.items()).isNotEmpty();
-                    assertThat(order.items().size()).isEqualTo(3);
-                    assertThat(order.items().get(2).getDiscount()).isEqualTo(100);
-                    assertThat(order.items().get(2).getTotal()).isEqualTo(0);
+                    assertThat(order.items().size()).isEqualTo(2);
+                    assertThat(order.items().get(0).getQuantity()).isEqualTo(2);
+                    assertThat(order.items().get(1).getQuantity()).isEqualTo(1);
+                    assertThat(order.items().get(1).getDiscount()).isEqualTo(100);
+                    assertThat(order.items().get(1).getTotal()).isEqualTo(0);
                     assertThat(order.getOrderTotal()).isEqualTo(140);
                 })
                 .verifyComplete();
@@ -190,16 +206,14 @@ public class ShopAppIntegrationTest {
         Order one = new Order(
                 111,
                 Arrays.asList(
-                        LineItem.builder().product(apple).discount(0).build(),
-                        LineItem.builder().product(apple).discount(30).build()
+                        new LineItem(apple, 2, 30, 1)
                 )
         );
         Order two = new Order(
                 222,
                 Arrays.asList(
-                        LineItem.builder().product(orange).discount(0).build(),
-                        LineItem.builder().product(orange).discount(0).build(),
-                        LineItem.builder().product(orange).discount(100).build()
+                        LineItem.builder().product(orange).quantity(2).build(),
+                        new LineItem(orange, 1, 100, 1)
                 )
         );
 
@@ -268,6 +282,241 @@ public class ShopAppIntegrationTest {
                 .as(StepVerifier::create)
                 .expectNext(1, 2)
                 .verifyComplete();
+
+        webTestClient.get()
+                .uri("/orders/v1/getOrderIds?cursor=1&size=1")
+                .exchange()
+                .returnResult(Integer.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNext(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldPageThroughOrders() {
+        Status status = new Status(201, OrderService.PRODUCT_ADDED_TO_ORDER);
+
+        for (long orderId : new long[]{3, 1, 2}) {
+            webTestClient.put()
+                    .uri("/orders/v1/add/" + orderId + "?productId=1&quantity=1")
+                    .exchange()
+                    .returnResult(Status.class)
+                    .getResponseBody()
+                    .as(StepVerifier::create)
+                    .expectNext(status)
+                    .verifyComplete();
+        }
+
+        webTestClient.get()
+                .uri("/orders/v1/getOrdersPage?size=2")
+                .exchange()
+                .returnResult(OrderPage.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .assertNext(page -> {
+                    assertThat(page.orders().stream().map(Order::id).toList()).containsExactly(1L, 2L).inOrder();
+                    assertThat(page.nextCursor()).isEqualTo(2L);
+                })
+                .verifyComplete();
+
+        webTestClient.get()
+                .uri("/orders/v1/getOrdersPage?cursor=2&size=2")
+                .exchange()
+                .returnResult(OrderPage.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .assertNext(page -> {
+                    assertThat(page.orders().stream().map(Order::id).toList()).containsExactly(3L);
+                    assertThat(page.nextCursor()).isNull();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldNotReturnOrdersPageOfInvalidSize() {
+        Status status = exceptionToStatus(new PageSizeOutOfRangeException(OrderService.MAX_ORDERS_PAGE_SIZE));
+
+        webTestClient.get()
+                .uri("/orders/v1/getOrdersPage?size=0")
+                .exchange()
+                .returnResult(Status.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNext(status)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldStreamOrdersAsNdjson() {
+        Status status = new Status(201, OrderService.PRODUCT_ADDED_TO_ORDER);
+
+        for (long orderId : new long[]{2, 1}) {
+            webTestClient.put()
+                    .uri("/orders/v1/add/" + orderId + "?productId=2&quantity=2")
+                    .exchange()
+                    .returnResult(Status.class)
+                    .getResponseBody()
+                    .as(StepVerifier::create)
+                    .expectNext(status)
+                    .verifyComplete();
+        }
+
+        webTestClient.get()
+                .uri("/orders/v1/streamOrders")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Order.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .assertNext(order -> {
+                    assertThat(order.id()).isEqualTo(1L);
+                    assertThat(order.getOrderTotal()).isEqualTo(140);
+                })
+                .assertNext(order -> assertThat(order.id()).isEqualTo(2L))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldNotLoseConcurrentAddsToTheSameItem() {
+        int adds = 50;
+        Status status = new Status(201, OrderService.PRODUCT_ADDED_TO_ORDER);
+
+        Flux.range(1, adds)
+                .flatMap(i -> webTestClient.put()
+                        .uri("/orders/v1/add/7?productId=1&quantity=" + i)
+                        .exchange()
+                        .returnResult(Status.class)
+                        .getResponseBody(), adds)
+                .as(StepVerifier::create)
+                .thenConsumeWhile(status::equals)
+                .verifyComplete();
+
+        orderItemsRepository.findAll()
+                .as(StepVerifier::create)
+                .assertNext(item -> {
+                    assertThat(item.getOrderId()).isEqualTo(7L);
+                    assertThat(item.getQuantity()).isEqualTo(adds * (adds + 1) / 2);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldAddQuantitiesOfSeveralOrdersInOneBatch() {
+        orderItemsRepository.addQuantity(8, 1, 1)
+                .as(StepVerifier::create)
+                .expectNext(1)
+                .verifyComplete();
+
+        orderItemsRepository.addAllQuantities(Map.of(8L, Map.of(1L, 2, 2L, 3), 9L, Map.of(1L, 4)))
+                .as(StepVerifier::create)
+                .expectNext(3L)
+                .verifyComplete();
+
+        orderItemsRepository.findAll()
+                .map(item -> List.of(item.getOrderId(), item.getProductId(), (long) item.getQuantity()))
+                .as(StepVerifier::create)
+                .recordWith(ArrayList::new)
+                .expectNextCount(3)
+                .consumeRecordedWith(items -> assertThat(items).containsExactly(
+                        List.of(8L, 1L, 3L), List.of(8L, 2L, 3L), List.of(9L, 1L, 4L)))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldAddAllProductsToOrder() {
+        Status added = new Status(201, OrderService.PRODUCT_ADDED_TO_ORDER);
+
+        webTestClient.put()
+                .uri("/orders/v1/add/5?productId=1&quantity=1")
+                .exchange()
+                .returnResult(Status.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNext(added)
+                .verifyComplete();
+
+        webTestClient.put()
+                .uri("/orders/v1/addAll/5")
+                .bodyValue(List.of(
+                        new CartLine(1, 1),
+                        new CartLine(2, 2),
+                        new CartLine(100, 1),
+                        new CartLine(2, -1)
+                ))
+                .exchange()
+                .returnResult(Status.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNext(
+                        added,
+                        added,
+                        exceptionToStatus(new ProductNotFoundException()),
+                        exceptionToStatus(new QuantityTooLowException())
+                )
+                .verifyComplete();
+
+        webTestClient.get()
+                .uri("/orders/v1/getOrderSummary/5")
+                .exchange()
+                .returnResult(Order.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .assertNext(order -> {
+                    assertThat(order.items()).containsExactly(
+                            new LineItem(new Product(50, "apple"), 2, 30, 1),
+                            LineItem.builder().product(new Product(70, "orange")).quantity(2).build(),
+                            new LineItem(new Product(70, "orange"), 1, 100, 1)
+                    );
+                    assertThat(order.getOrderTotal()).isEqualTo(85 + 140);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldPublishConnectionPoolMetrics() {
+        webTestClient.put()
+                .uri("/orders/v1/add/1?productId=1&quantity=1")
+                .exchange()
+                .expectStatus().isOk();
+
+        assertThat(connectionFactory).isInstanceOf(Wrapped.class);
+        for (String gauge : List.of("r2dbc.pool.acquired", "r2dbc.pool.idle", "r2dbc.pool.pending", "r2dbc.pool.max.allocated")) {
+            assertThat(meterRegistry.get(gauge).tag("name", "connectionFactory").gauge()).isNotNull();
+        }
+        assertThat(meterRegistry.get("r2dbc.pool.acquire").tag("outcome", "success").timer().count()).isGreaterThan(0);
+    }
+
+    @Test
+    void shouldServeOrderSummaryFromCacheUntilOrderChanges() {
+        webTestClient.put()
+                .uri("/orders/v1/add/1?productId=1&quantity=1")
+                .exchange()
+                .expectStatus().isOk();
+        for (int i = 0; i < 2; i++) {
+            webTestClient.get()
+                    .uri("/orders/v1/getOrderSummary/1")
+                    .exchange()
+                    .expectBody(Order.class)
+                    .value(order -> assertThat(order.getOrderTotal()).isEqualTo(50));
+        }
+        assertThat(cacheGets("hit")).isAtLeast(1.0);
+
+        webTestClient.put()
+                .uri("/orders/v1/add/1?productId=1&quantity=1")
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.get()
+                .uri("/orders/v1/getOrderSummary/1")
+                .exchange()
+                .expectBody(Order.class)
+                .value(order -> assertThat(order.getOrderTotal()).isEqualTo(85));
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", "orders.priced").functionCounter()).isNotNull();
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "orders.priced").tag("result", result).functionCounter().count();
     }
 
     private static Status exceptionToStatus(Throwable exception) {
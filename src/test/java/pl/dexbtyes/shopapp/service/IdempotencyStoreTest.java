@@ -0,0 +1,120 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import pl.dexbtyes.shopapp.configuration.IdempotencyProperties;
+import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.exception.IdempotencyKeyReusedException;
+import pl.dexbtyes.shopapp.exception.InvalidIdempotencyKeyException;
+import pl.dexbtyes.shopapp.exception.ProductNotFoundException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class IdempotencyStoreTest {
+    private static final Status CREATED = new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER);
+    SimpleMeterRegistry meterRegistry;
+    IdempotencyStore idempotencyStore;
+    AtomicInteger executions;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyStore = new IdempotencyStore(new IdempotencyProperties(100, Duration.ofMinutes(1)), meterRegistry);
+        executions = new AtomicInteger();
+    }
+
+    @Test
+    void shouldReturnStoredStatusWithoutRunningRequestAgain() {
+        for (int i = 0; i < 3; i++) {
+            idempotencyStore.execute("key", 1L, this::add)
+                    .as(StepVerifier::create)
+                    .expectNext(CREATED)
+                    .verifyComplete();
+        }
+
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(gets("hit")).isEqualTo(2.0);
+        assertThat(meterRegistry.get("cache.size").tag("cache", IdempotencyStore.CACHE_NAME).gauge().value())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldShareRunningRequestWithItsRetries() {
+        Sinks.One<Status> added = Sinks.one();
+        StepVerifier first = idempotencyStore.execute("key", 1L,
+                        () -> added.asMono().doOnSubscribe(subscription -> executions.incrementAndGet()))
+                .as(StepVerifier::create)
+                .expectNext(CREATED)
+                .expectComplete()
+                .verifyLater();
+        StepVerifier retry = idempotencyStore.execute("key", 1L, this::add)
+                .as(StepVerifier::create)
+                .expectNext(CREATED)
+                .expectComplete()
+                .verifyLater();
+
+        added.tryEmitValue(CREATED);
+
+        first.verify(Duration.ofSeconds(5));
+        retry.verify(Duration.ofSeconds(5));
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRunFailedRequestAgain() {
+        idempotencyStore.execute("key", 1L, () -> Mono.error(new ProductNotFoundException()))
+                .as(StepVerifier::create)
+                .verifyError(ProductNotFoundException.class);
+
+        idempotencyStore.execute("key", 1L, this::add)
+                .as(StepVerifier::create)
+                .expectNext(CREATED)
+                .verifyComplete();
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectKeyReusedForAnotherRequest() {
+        idempotencyStore.execute("key", 1L, this::add)
+                .as(StepVerifier::create)
+                .expectNext(CREATED)
+                .verifyComplete();
+
+        idempotencyStore.execute("key", 2L, this::add)
+                .as(StepVerifier::create)
+                .verifyError(IdempotencyKeyReusedException.class);
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectKeysOutOfRange() {
+        idempotencyStore.execute("", 1L, this::add)
+                .as(StepVerifier::create)
+                .verifyError(InvalidIdempotencyKeyException.class);
+        idempotencyStore.execute("k".repeat(IdempotencyStore.MAX_KEY_LENGTH + 1), 1L, this::add)
+                .as(StepVerifier::create)
+                .verifyError(InvalidIdempotencyKeyException.class);
+        assertThat(executions.get()).isEqualTo(0);
+    }
+
+    private Mono<Status> add() {
+        return Mono.fromSupplier(() -> {
+            executions.incrementAndGet();
+            return CREATED;
+        });
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", IdempotencyStore.CACHE_NAME).tag("result", result)
+                .functionCounter()
+                .count();
+    }
+}
@@ -0,0 +1,201 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.dexbtyes.shopapp.configuration.IncrementalRulesProperties;
+import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.PricingProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties.SessionMode;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.awaitility.Awaitility.await;
+
+class IncrementalRuleSessionsTest {
+    private static final int RANDOM_ORDERS = 200;
+    private static final int RANDOM_ADDS = 10;
+    private static final long CATALOG_VERSION = 1;
+    SimpleMeterRegistry meterRegistry;
+    PricingScheduler pricingScheduler;
+    IncrementalRuleSessions incrementalSessions;
+    Product apple;
+    Product orange;
+    Product banana;
+    List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pricingScheduler = new PricingScheduler(new PricingProperties(1, 16), meterRegistry);
+        incrementalSessions = newSessions(RANDOM_ORDERS * 3L);
+        apple = new Product(50, "apple");
+        orange = new Product(70, "orange");
+        banana = new Product(30, "banana");
+        products = List.of(apple, orange, banana);
+    }
+
+    @AfterEach
+    void tearDown() {
+        incrementalSessions.shutdown();
+        pricingScheduler.shutdown();
+    }
+
+    private IncrementalRuleSessions newSessions(long maximumCartItems) {
+        return new IncrementalRuleSessions(new IncrementalRulesProperties(true, maximumCartItems, Duration.ofMinutes(1)),
+                new RulesProperties(SessionMode.POOLED, 1, true), pricingScheduler, meterRegistry);
+    }
+
+    @Test
+    void shouldPriceLikeFullEvaluationAfterEveryAdd() {
+        RuleSessions ruleSessions = new RuleSessions(
+                OrderRulesEngine.loadRuleBase(OrderRulesEngine.ORDER_CONFIG, OrderRulesEngine.ORDER_MODEL, true),
+                new RulesProperties(SessionMode.NEW, 1, true), meterRegistry);
+        SplittableRandom random = new SplittableRandom(18);
+        Map<Long, Map<Product, Integer>> carts = new HashMap<>();
+
+        for (int add = 0; add < RANDOM_ADDS; add++) {
+            for (long orderId = 1; orderId <= RANDOM_ORDERS; orderId++) {
+                Map<Product, Integer> cart = carts.computeIfAbsent(orderId, id -> new HashMap<>());
+                Product product = products.get(random.nextInt(products.size()));
+                int quantity = 1 + random.nextInt(4);
+                if (add > 0) {
+                    incrementalSessions.write(orderId, Map.of(product, quantity), Mono.just(1)).block();
+                }
+                cart.merge(product, quantity, Integer::sum);
+
+                Order incremental = incrementalSessions.price(orderId, CATALOG_VERSION, products, Mono.just(order(orderId, cart)))
+                        .block();
+                Order full = ruleSessions.execute(order(orderId, cart), products);
+                assertWithMessage("order %s after add %s", orderId, add)
+                        .that(incremental.items()).containsExactlyElementsIn(full.items());
+                assertThat(incremental.getOrderTotal()).isEqualTo(full.getOrderTotal());
+            }
+        }
+        assertThat(meterRegistry.get("rules.incremental.loads").counter().count()).isEqualTo((double) RANDOM_ORDERS);
+        assertThat(meterRegistry.get("rules.incremental.updates").counter().count())
+                .isEqualTo((double) RANDOM_ORDERS * (RANDOM_ADDS - 1));
+    }
+
+    @Test
+    void shouldRebuildSessionWhenCatalogChanges() {
+        price(1, CATALOG_VERSION, Map.of(apple, 2));
+        Product repricedApple = new Product(60, "apple");
+
+        Order order = incrementalSessions.price(1, CATALOG_VERSION + 1, List.of(repricedApple, orange),
+                        Mono.just(order(1, Map.of(repricedApple, 2))))
+                .block();
+
+        assertThat(order.items()).containsExactly(new LineItem(repricedApple, 2, 30, 1));
+        assertThat(loads()).isEqualTo(2.0);
+    }
+
+    @Test
+    void shouldRebuildEvictedSessions() {
+        incrementalSessions.shutdown();
+        meterRegistry = new SimpleMeterRegistry();
+        incrementalSessions = newSessions(1);
+
+        for (long orderId = 1; orderId <= 10; orderId++) {
+            price(orderId, CATALOG_VERSION, Map.of(apple, 2));
+        }
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertThat(meterRegistry.get("cache.size")
+                        .tag("cache", IncrementalRuleSessions.CACHE_NAME)
+                        .gauge()
+                        .value()).isAtMost(1.0));
+        for (long orderId = 1; orderId <= 10; orderId++) {
+            assertThat(price(orderId, CATALOG_VERSION, Map.of(apple, 2)).getOrderTotal()).isEqualTo(85);
+        }
+
+        assertThat(loads()).isAtLeast(19.0);
+    }
+
+    @Test
+    void shouldDisposeSessionsOverMaximumCartItems() {
+        incrementalSessions.shutdown();
+        meterRegistry = new SimpleMeterRegistry();
+        incrementalSessions = newSessions(3);
+
+        price(1, CATALOG_VERSION, Map.of(apple, 2));
+        price(2, CATALOG_VERSION, Map.of(apple, 2));
+        assertThat(sessionCount()).isEqualTo(2.0);
+        incrementalSessions.write(1, Map.of(orange, 1, banana, 1), Mono.just(1)).block();
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertThat(sessionCount()).isAtMost(1.0));
+
+        incrementalSessions.shutdown();
+        meterRegistry = new SimpleMeterRegistry();
+        incrementalSessions = newSessions(3);
+        price(1, CATALOG_VERSION, Map.of(apple, 1, orange, 1, banana, 1));
+        price(2, CATALOG_VERSION, Map.of(apple, 2));
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertThat(sessionCount()).isAtMost(1.0));
+    }
+
+    private double sessionCount() {
+        return meterRegistry.get("cache.size")
+                .tag("cache", IncrementalRuleSessions.CACHE_NAME)
+                .gauge()
+                .value();
+    }
+
+    @Test
+    void shouldNotKeepSessionBuiltWhileOrderChanged() {
+        Sinks.One<Order> read = Sinks.one();
+        StepVerifier pricing = incrementalSessions.price(1, CATALOG_VERSION, products, read.asMono())
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(85))
+                .expectComplete()
+                .verifyLater();
+
+        incrementalSessions.write(1, Map.of(apple, 1), Mono.just(1)).block();
+        read.tryEmitValue(order(1, Map.of(apple, 2)));
+        pricing.verify(Duration.ofSeconds(5));
+
+        assertThat(price(1, CATALOG_VERSION, Map.of(apple, 2)).getOrderTotal()).isEqualTo(85);
+        assertThat(loads()).isEqualTo(2.0);
+    }
+
+    @Test
+    void shouldDropSessionWhenWriteFails() {
+        price(1, CATALOG_VERSION, Map.of(apple, 2));
+
+        incrementalSessions.write(1, Map.of(apple, 1), Mono.error(new IllegalStateException("Write failed")))
+                .as(StepVerifier::create)
+                .verifyError(IllegalStateException.class);
+
+        assertThat(price(1, CATALOG_VERSION, Map.of(apple, 3)).getOrderTotal()).isEqualTo(135);
+        assertThat(loads()).isEqualTo(2.0);
+        assertThat(meterRegistry.get("rules.incremental.discarded").counter().count()).isEqualTo(1.0);
+    }
+
+    private Order price(long orderId, long catalogVersion, Map<Product, Integer> cart) {
+        return incrementalSessions.price(orderId, catalogVersion, products, Mono.just(order(orderId, cart))).block();
+    }
+
+    private double loads() {
+        return meterRegistry.get("rules.incremental.loads").counter().count();
+    }
+
+    private static Order order(long orderId, Map<Product, Integer> cart) {
+        Order order = new Order(orderId, new ArrayList<>());
+        cart.forEach(order::addQuantity);
+        return order;
+    }
+}
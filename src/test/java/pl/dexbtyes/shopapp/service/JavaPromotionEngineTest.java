@@ -0,0 +1,128 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.kie.api.KieBase;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties.SessionMode;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+@SpringBootTest(classes = {OrderRulesEngine.class})
+class JavaPromotionEngineTest {
+    private static final int RANDOM_ORDERS = 500;
+    @Autowired
+    KieBase kieBase;
+    JavaPromotionEngine javaPromotionEngine;
+    Product apple;
+    Product orange;
+
+    @BeforeEach
+    void setUp() {
+        javaPromotionEngine = new JavaPromotionEngine();
+        apple = new Product(50, "apple");
+        orange = new Product(70, "orange");
+    }
+
+    @Test
+    void shouldApplyPromotions() {
+        Order order = new Order(1, new ArrayList<>());
+        order.addQuantity(apple, 5);
+        order.addQuantity(orange, 5);
+
+        javaPromotionEngine.execute(order, List.of(apple, orange));
+
+        assertThat(order.items()).containsExactly(
+                new LineItem(apple, 5, 30, 2),
+                LineItem.builder().product(orange).quantity(5).build(),
+                new LineItem(orange, 2, 100, 2)
+        );
+    }
+
+    @Test
+    void shouldNotPromoteProductsOutsideOfCatalog() {
+        Product repricedApple = new Product(60, "apple");
+        Order order = new Order(1, new ArrayList<>());
+        order.addQuantity(repricedApple, 2);
+
+        javaPromotionEngine.execute(order, List.of(apple, orange));
+
+        assertThat(order.items()).containsExactly(LineItem.builder().product(repricedApple).quantity(2).build());
+    }
+
+    @Test
+    void shouldSelectEngineByProperty() {
+        ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+                .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+                .withUserConfiguration(OrderRulesEngine.class, RuleSessions.class, JavaPromotionEngine.class);
+
+        contextRunner.run(context -> assertThat(context.getBean(PromotionEngine.class)).isInstanceOf(RuleSessions.class));
+        contextRunner.withPropertyValues(PromotionEngine.ENGINE_PROPERTY + "=java")
+                .run(context -> {
+                    assertThat(context.getBean(PromotionEngine.class)).isInstanceOf(JavaPromotionEngine.class);
+                    assertThat(context.getBeanNamesForType(KieBase.class)).isEmpty();
+                });
+    }
+
+    @ParameterizedTest
+    @EnumSource(SessionMode.class)
+    void shouldPriceRandomOrdersLikeDrools(SessionMode mode) {
+        RuleSessions ruleSessions = new RuleSessions(kieBase, new RulesProperties(mode, 1, true), new SimpleMeterRegistry());
+        SplittableRandom random = new SplittableRandom(mode.ordinal());
+
+        for (int i = 0; i < RANDOM_ORDERS; i++) {
+            List<Product> catalog = List.of(
+                    new Product(1 + random.nextInt(200), "apple"),
+                    new Product(1 + random.nextInt(200), "orange"),
+                    new Product(1 + random.nextInt(200), "banana")
+            );
+            List<LineItem> lines = randomLines(random, catalog);
+
+            Order drools = ruleSessions.execute(newOrder(i, lines), catalog);
+            Order java = javaPromotionEngine.execute(newOrder(i, lines), catalog);
+
+            assertWithMessage("total of %s", lines).that(java.getOrderTotal()).isEqualTo(drools.getOrderTotal());
+            assertWithMessage("items of %s", lines).that(java.items()).containsExactlyElementsIn(drools.items());
+        }
+    }
+
+    /**
+     * Mostly catalog products merged the way orders are assembled, sometimes a product with a price the catalog does
+     * not have or a second line of the same product.
+     */
+    private static List<LineItem> randomLines(SplittableRandom random, List<Product> catalog) {
+        List<LineItem> lines = new ArrayList<>();
+        for (int line = random.nextInt(5); line > 0; line--) {
+            Product product = catalog.get(random.nextInt(catalog.size()));
+            if (random.nextInt(10) == 0) {
+                product = new Product(product.basePrice() + 1, product.name());
+            }
+            lines.add(LineItem.builder().product(product).quantity(1 + random.nextInt(random.nextBoolean() ? 3 : 60)).build());
+        }
+        return lines;
+    }
+
+    private static Order newOrder(long id, List<LineItem> lines) {
+        Order order = new Order(id, new ArrayList<>());
+        for (LineItem line : lines) {
+            order.addItem(LineItem.builder().product(line.getProduct()).quantity(line.getQuantity()).build());
+        }
+        return order;
+    }
+}
@@ -0,0 +1,190 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.dexbtyes.shopapp.configuration.WriteBehindProperties;
+import pl.dexbtyes.shopapp.exception.WriteBufferFullException;
+import pl.dexbtyes.shopapp.repository.OrderItemsRepository;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderItemsWriteBufferTest {
+    @Mock
+    OrderItemsRepository orderItemsRepository;
+    SimpleMeterRegistry meterRegistry;
+    OrderItemsWriteBuffer writeBuffer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        writeBuffer = newWriteBuffer(1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBuffer.shutdown();
+    }
+
+    private OrderItemsWriteBuffer newWriteBuffer(int maximumPendingItems) {
+        return newWriteBuffer(maximumPendingItems, 10 * maximumPendingItems);
+    }
+
+    private OrderItemsWriteBuffer newWriteBuffer(int maximumPendingItems, int maximumBufferedItems) {
+        return new OrderItemsWriteBuffer(new WriteBehindProperties(true, maximumPendingItems, maximumBufferedItems,
+                Duration.ofMinutes(1), Duration.ofSeconds(1)), orderItemsRepository, meterRegistry);
+    }
+
+    @Test
+    void shouldWriteAddsToTheSameItemOnce() {
+        when(orderItemsRepository.addAllQuantities(Map.of(1L, Map.of(1L, 100, 2L, 50), 2L, Map.of(1L, 1))))
+                .thenReturn(Mono.just(3L));
+
+        for (int i = 0; i < 100; i++) {
+            add(1, Map.of(1L, 1));
+        }
+        add(1, Map.of(2L, 50));
+        add(2, Map.of(1L, 1));
+
+        writeBuffer.flushed()
+                .as(StepVerifier::create)
+                .verifyComplete();
+        assertThat(meterRegistry.get("orders.write-behind.coalesced").counter().count()).isEqualTo(99.0);
+        assertThat(meterRegistry.get("orders.write-behind.lag").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("orders.write-behind.pending").gauge().value()).isEqualTo(0.0);
+    }
+
+    @Test
+    void shouldFlushWhenMaximumPendingItemsAreBuffered() {
+        writeBuffer = newWriteBuffer(3);
+        when(orderItemsRepository.addAllQuantities(Map.of(1L, Map.of(1L, 2), 2L, Map.of(1L, 1, 2L, 1))))
+                .thenReturn(Mono.just(3L));
+
+        add(1, Map.of(1L, 1));
+        add(1, Map.of(1L, 1));
+        add(2, Map.of(1L, 1));
+        add(2, Map.of(2L, 1));
+
+        verify(orderItemsRepository, timeout(5000)).addAllQuantities(any());
+    }
+
+    @Test
+    void shouldReadOrderOnlyAfterBatchInFlightIsWritten() {
+        Sinks.One<Long> written = Sinks.one();
+        when(orderItemsRepository.addAllQuantities(Map.of(1L, Map.of(1L, 1))))
+                .thenReturn(written.asMono());
+        add(1, Map.of(1L, 1));
+        writeBuffer.flushPending();
+
+        writeBuffer.flushed(1)
+                .as(StepVerifier::create)
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> written.tryEmitValue(1L))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        writeBuffer.flushed(2)
+                .as(StepVerifier::create)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldKeepItemsOfFailedBatchForTheNextFlush() {
+        when(orderItemsRepository.addAllQuantities(Map.of(1L, Map.of(1L, 1))))
+                .thenReturn(Mono.error(new IllegalStateException("Connection lost")))
+                .thenReturn(Mono.just(1L));
+        add(1, Map.of(1L, 1));
+
+        writeBuffer.flushed(1)
+                .as(StepVerifier::create)
+                .verifyError(IllegalStateException.class);
+        writeBuffer.flushed(1)
+                .as(StepVerifier::create)
+                .verifyComplete();
+
+        verify(orderItemsRepository, times(2)).addAllQuantities(any());
+        assertThat(meterRegistry.get("orders.write-behind.failures").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldFailReadWhenEarlierBatchHoldingOrderFailed() {
+        Sinks.One<Long> firstWrite = Sinks.one();
+        when(orderItemsRepository.addAllQuantities(Map.of(1L, Map.of(1L, 1))))
+                .thenReturn(firstWrite.asMono())
+                .thenReturn(Mono.just(1L));
+        add(1, Map.of(1L, 1));
+        writeBuffer.flushPending();
+        add(1, Map.of(1L, 1));
+        writeBuffer.flushPending();
+
+        StepVerifier read = writeBuffer.flushed(1)
+                .as(StepVerifier::create)
+                .expectError(IllegalStateException.class)
+                .verifyLater();
+        StepVerifier readAll = writeBuffer.flushed()
+                .as(StepVerifier::create)
+                .expectError(IllegalStateException.class)
+                .verifyLater();
+        firstWrite.tryEmitError(new IllegalStateException("Connection lost"));
+
+        read.verify(Duration.ofSeconds(5));
+        readAll.verify(Duration.ofSeconds(5));
+        verify(orderItemsRepository, timeout(5000).times(2)).addAllQuantities(any());
+    }
+
+    @Test
+    void shouldRejectAddsWhenMaximumBufferedItemsAreBuffered() {
+        writeBuffer.shutdown();
+        meterRegistry = new SimpleMeterRegistry();
+        writeBuffer = newWriteBuffer(1000, 2);
+        when(orderItemsRepository.addAllQuantities(Map.of(1L, Map.of(1L, 1, 2L, 1))))
+                .thenReturn(Mono.just(2L));
+
+        add(1, Map.of(1L, 1, 2L, 1));
+        writeBuffer.add(2, Map.of(1L, 1))
+                .as(StepVerifier::create)
+                .verifyError(WriteBufferFullException.class);
+
+        assertThat(meterRegistry.get("orders.write-behind.rejected").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("orders.write-behind.pending").gauge().value()).isEqualTo(2.0);
+        writeBuffer.flushed()
+                .as(StepVerifier::create)
+                .verifyComplete();
+        add(2, Map.of(1L, 1));
+        when(orderItemsRepository.addAllQuantities(Map.of(2L, Map.of(1L, 1))))
+                .thenReturn(Mono.just(1L));
+    }
+
+    @Test
+    void shouldWriteBufferedItemsOnShutdown() {
+        when(orderItemsRepository.addAllQuantities(Map.of(1L, Map.of(1L, 1))))
+                .thenReturn(Mono.just(1L));
+        add(1, Map.of(1L, 1));
+
+        writeBuffer.shutdown();
+
+        verify(orderItemsRepository).addAllQuantities(any());
+    }
+
+    private void add(long orderId, Map<Long, Integer> quantities) {
+        writeBuffer.add(orderId, quantities)
+                .as(StepVerifier::create)
+                .verifyComplete();
+    }
+}
@@ -1,34 +1,60 @@
 package pl.dexbtyes.shopapp.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.kie.api.runtime.KieContainer;
+import org.kie.api.KieBase;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Example;
 import org.springframework.http.HttpStatus;
+import pl.dexbtyes.shopapp.configuration.IncrementalRulesProperties;
+import pl.dexbtyes.shopapp.configuration.OrderCacheProperties;
 import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.PricingProperties;
+import pl.dexbtyes.shopapp.configuration.PromotionMemoProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.configuration.WriteBehindProperties;
+import pl.dexbtyes.shopapp.dto.CartLine;
 import pl.dexbtyes.shopapp.dto.LineItem;
 import pl.dexbtyes.shopapp.dto.Order;
 import pl.dexbtyes.shopapp.dto.Product;
 import pl.dexbtyes.shopapp.dto.Status;
 import pl.dexbtyes.shopapp.entity.OrderItemsEntity;
 import pl.dexbtyes.shopapp.entity.ProductEntity;
+import pl.dexbtyes.shopapp.exception.PageSizeOutOfRangeException;
 import pl.dexbtyes.shopapp.exception.ProductNotFoundException;
 import pl.dexbtyes.shopapp.exception.QuantityTooLowException;
 import pl.dexbtyes.shopapp.repository.OrderItemsRepository;
 import pl.dexbtyes.shopapp.repository.ProductRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.Arrays;
-
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -39,14 +65,16 @@ class OrderServiceTest {
     @Mock
     OrderItemsRepository orderItemsRepository;
     @Autowired
-    KieContainer kieContainer;
+    KieBase kieBase;
+    SimpleMeterRegistry meterRegistry;
     OrderService orderService;
     ProductEntity apple;
     ProductEntity orange;
 
     @BeforeEach
     void setUp() {
-        orderService = new OrderService(productRepository, orderItemsRepository, kieContainer);
+        meterRegistry = new SimpleMeterRegistry();
+        orderService = newOrderService(new IncrementalRulesProperties(false, 0, Duration.ofMinutes(1)));
         apple = new ProductEntity(1L, "apple", 50);
         orange = new ProductEntity(2L, "orange", 70);
     }
@@ -55,6 +83,28 @@ class OrderServiceTest {
     void tearDown() {
     }
 
+    private OrderService newOrderService(IncrementalRulesProperties incrementalProperties) {
+        return newOrderService(incrementalProperties, new WriteBehindProperties(false, 1000, 10000, Duration.ofMillis(100),
+                Duration.ofSeconds(1)));
+    }
+
+    private OrderService newOrderService(IncrementalRulesProperties incrementalProperties,
+                                         WriteBehindProperties writeBehindProperties) {
+        RulesProperties rulesProperties = new RulesProperties(RulesProperties.SessionMode.POOLED, 1, true);
+        PricingScheduler pricingScheduler = new PricingScheduler(new PricingProperties(1, 16), meterRegistry);
+        return new OrderService(
+                orderItemsRepository,
+                new ProductCatalog(productRepository, meterRegistry),
+                new RuleSessions(kieBase, rulesProperties, meterRegistry),
+                new PricedOrderCache(new OrderCacheProperties(100, Duration.ofMinutes(1)), meterRegistry),
+                pricingScheduler,
+                new IncrementalRuleSessions(incrementalProperties, rulesProperties, pricingScheduler, meterRegistry),
+                new PromotionMemo(new PromotionMemoProperties(100, 8), meterRegistry),
+                new OrderItemsWriteBuffer(writeBehindProperties, orderItemsRepository, meterRegistry),
+                meterRegistry
+        );
+    }
+
     @Test
     void shouldNotAddNewItemIfProductDoesNotExists() {
         orderService.addItemsForOrder(1, apple.id(), 1)
@@ -78,49 +128,119 @@ class OrderServiceTest {
 
     @Test
     void shouldAddNewItemForNewOrder() {
-        OrderItemsEntity orderItemsEntity = OrderItemsEntity.builder()
-                .orderId(1L)
-                .productId(apple.id())
-                .quantity(1)
-                .build();
-
-        when(productRepository.findById(apple.id()))
-                .thenReturn(Mono.just(apple));
-        when(orderItemsRepository.findAll(any(Example.class)))
-                .thenReturn(Flux.empty());
-        when(orderItemsRepository.save(any()))
-                .thenReturn(Mono.just(orderItemsEntity));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(orderItemsRepository.addQuantity(1L, apple.id(), 1))
+                .thenReturn(Mono.just(1));
 
         orderService.addItemsForOrder(1, apple.id(), 1)
                 .as(StepVerifier::create)
                 .expectNext(new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER))
                 .verifyComplete();
+
+        verify(orderItemsRepository, times(1)).addQuantity(1L, apple.id(), 1);
+        verify(orderItemsRepository, never()).save(any());
     }
 
     @Test
-    void shouldAddToItemQuantityForOrder() {
-        OrderItemsEntity orderItemsEntity = OrderItemsEntity.builder()
-                .orderId(1L)
-                .productId(apple.id())
-                .quantity(1)
-                .build();
-        OrderItemsEntity updatedOrderItemsEntity = OrderItemsEntity.builder()
-                .orderId(1L)
-                .productId(apple.id())
-                .quantity(2)
-                .build();
+    void shouldRetryAddWhenConcurrentInsertWins() {
+        AtomicInteger attempts = new AtomicInteger();
 
-        when(productRepository.findById(apple.id()))
-                .thenReturn(Mono.just(apple));
-        when(orderItemsRepository.findAll(any(Example.class)))
-                .thenReturn(Flux.just(orderItemsEntity));
-        when(orderItemsRepository.save(any()))
-                .thenReturn(Mono.just(updatedOrderItemsEntity));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(orderItemsRepository.addQuantity(1L, apple.id(), 2))
+                .thenReturn(Mono.defer(() -> attempts.incrementAndGet() == 1
+                        ? Mono.error(new DuplicateKeyException("uq_order_items_order_product"))
+                        : Mono.just(1)));
 
-        orderService.addItemsForOrder(1, apple.id(), 1)
+        orderService.addItemsForOrder(1, apple.id(), 2)
                 .as(StepVerifier::create)
                 .expectNext(new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER))
                 .verifyComplete();
+
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotRetryAddForOtherErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(orderItemsRepository.addQuantity(1L, apple.id(), 2))
+                .thenReturn(Mono.defer(() -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(new DataIntegrityViolationException("fk_product"));
+                }));
+
+        orderService.addItemsForOrder(1, apple.id(), 2)
+                .as(StepVerifier::create)
+                .expectError(DataIntegrityViolationException.class)
+                .verify();
+
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldAddAllLinesWithOneLookupAndOneWrite() {
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(orderItemsRepository.addQuantities(1L, Map.of(apple.id(), 3, orange.id(), 2)))
+                .thenReturn(Mono.just(2L));
+
+        orderService.addItemsForOrder(1, List.of(
+                        new CartLine(apple.id(), 1),
+                        new CartLine(orange.id(), 2),
+                        new CartLine(apple.id(), 2)
+                ))
+                .as(StepVerifier::create)
+                .expectNext(
+                        new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER),
+                        new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER),
+                        new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER)
+                )
+                .verifyComplete();
+
+        verify(productRepository, times(1)).findAll();
+        verify(productRepository, never()).findAllById(anyIterable());
+        verify(orderItemsRepository, times(1)).addQuantities(anyLong(), any());
+        verify(orderItemsRepository, never()).addQuantity(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void shouldReturnStatusForEveryLine() {
+        QuantityTooLowException quantityTooLow = new QuantityTooLowException();
+        ProductNotFoundException productNotFound = new ProductNotFoundException();
+
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(productRepository.findAllById(anyIterable()))
+                .thenReturn(Flux.empty());
+        when(orderItemsRepository.addQuantities(1L, Map.of(orange.id(), 1)))
+                .thenReturn(Mono.just(1L));
+
+        orderService.addItemsForOrder(1, List.of(
+                        new CartLine(apple.id(), 0),
+                        new CartLine(100L, 1),
+                        new CartLine(orange.id(), 1)
+                ))
+                .as(StepVerifier::create)
+                .expectNext(
+                        new Status(quantityTooLow.getCode(), quantityTooLow.getMessage()),
+                        new Status(productNotFound.getCode(), productNotFound.getMessage()),
+                        new Status(HttpStatus.CREATED.value(), OrderService.PRODUCT_ADDED_TO_ORDER)
+                )
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldNotAddAnythingForEmptyCart() {
+        orderService.addItemsForOrder(1, List.of())
+                .as(StepVerifier::create)
+                .verifyComplete();
+
+        verify(productRepository, never()).findAll();
+        verify(orderItemsRepository, never()).addQuantities(anyLong(), any());
     }
 
     @Test
@@ -136,8 +256,8 @@ class OrderServiceTest {
                 .quantity(1)
                 .build();
         Order orderOne = new Order(1, Arrays.asList(
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build()
+                LineItem.builder().product(new Product(apple.price(), apple.name())).quantity(1).build(),
+                LineItem.builder().product(new Product(orange.price(), orange.name())).quantity(1).build()
         ));
         OrderItemsEntity applesTwo = OrderItemsEntity.builder()
                 .orderId(2L)
@@ -150,16 +270,12 @@ class OrderServiceTest {
                 .quantity(1)
                 .build();
         Order orderTwo = new Order(2, Arrays.asList(
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build()
+                LineItem.builder().product(new Product(apple.price(), apple.name())).quantity(1).build(),
+                LineItem.builder().product(new Product(orange.price(), orange.name())).quantity(1).build()
         ));
 
         when(orderItemsRepository.findAll())
                 .thenReturn(Flux.just(applesOne, orangesOne, applesTwo, orangesTwo));
-        when(productRepository.findById(apple.id()))
-                .thenReturn(Mono.just(apple));
-        when(productRepository.findById(orange.id()))
-                .thenReturn(Mono.just(orange));
         when(productRepository.findAll())
                 .thenReturn(Flux.just(apple, orange));
 
@@ -182,16 +298,12 @@ class OrderServiceTest {
                 .quantity(1)
                 .build();
         Order order = new Order(1, Arrays.asList(
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build()
+                LineItem.builder().product(new Product(apple.price(), apple.name())).quantity(1).build(),
+                LineItem.builder().product(new Product(orange.price(), orange.name())).quantity(1).build()
         ));
 
         when(orderItemsRepository.findAll(any(Example.class)))
                 .thenReturn(Flux.just(apples, oranges));
-        when(productRepository.findById(apple.id()))
-                .thenReturn(Mono.just(apple));
-        when(productRepository.findById(orange.id()))
-                .thenReturn(Mono.just(orange));
         when(productRepository.findAll())
                 .thenReturn(Flux.just(apple, orange));
 
@@ -201,6 +313,184 @@ class OrderServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    void shouldPriceOrderByIdAgainOnlyAfterItChanged() {
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(Flux.just(OrderItemsEntity.builder().orderId(1L).productId(apple.id()).quantity(1).build()))
+                .thenReturn(Flux.just(OrderItemsEntity.builder().orderId(1L).productId(apple.id()).quantity(2).build()));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(orderItemsRepository.addQuantity(1L, apple.id(), 1))
+                .thenReturn(Mono.just(1));
+
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(50))
+                .verifyComplete();
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(50))
+                .verifyComplete();
+        verify(orderItemsRepository, times(1)).findAll(any(Example.class));
+
+        orderService.addItemsForOrder(1, apple.id(), 1)
+                .as(StepVerifier::create)
+                .expectNextCount(1)
+                .verifyComplete();
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(85))
+                .verifyComplete();
+        verify(orderItemsRepository, times(2)).findAll(any(Example.class));
+    }
+
+    @Test
+    void shouldShareConcurrentReadsOfTheSameOrder() {
+        Sinks.Many<OrderItemsEntity> items = Sinks.many().replay().all();
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(items.asFlux());
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        List<StepVerifier> readers = IntStream.range(0, 3)
+                .mapToObj(i -> orderService.getOrderById(1)
+                        .as(StepVerifier::create)
+                        .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(50))
+                        .expectComplete()
+                        .verifyLater())
+                .toList();
+        assertThat(meterRegistry.get("orders.in-flight").gauge().value()).isEqualTo(1.0);
+        items.tryEmitNext(OrderItemsEntity.builder().orderId(1L).productId(apple.id()).quantity(1).build());
+        items.tryEmitComplete();
+
+        readers.forEach(reader -> reader.verify(Duration.ofSeconds(5)));
+        verify(orderItemsRepository, times(1)).findAll(any(Example.class));
+        assertThat(meterRegistry.get("orders.coalesced").counter().count()).isEqualTo(2.0);
+        assertThat(meterRegistry.get("orders.in-flight").gauge().value()).isEqualTo(0.0);
+    }
+
+    @Test
+    void shouldNotJoinReadStartedBeforeOrderChanged() {
+        Sinks.Many<OrderItemsEntity> before = Sinks.many().replay().all();
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(before.asFlux())
+                .thenReturn(Flux.just(OrderItemsEntity.builder().orderId(1L).productId(apple.id()).quantity(2).build()));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(orderItemsRepository.addQuantity(1L, apple.id(), 1))
+                .thenReturn(Mono.just(1));
+
+        StepVerifier first = orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(50))
+                .expectComplete()
+                .verifyLater();
+        orderService.addItemsForOrder(1, apple.id(), 1)
+                .as(StepVerifier::create)
+                .expectNextCount(1)
+                .verifyComplete();
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(85))
+                .verifyComplete();
+        before.tryEmitNext(OrderItemsEntity.builder().orderId(1L).productId(apple.id()).quantity(1).build());
+        before.tryEmitComplete();
+
+        first.verify(Duration.ofSeconds(5));
+        assertThat(meterRegistry.get("orders.coalesced").counter().count()).isEqualTo(0.0);
+    }
+
+    @Test
+    void shouldReadOrderAgainAfterSharedReadFailed() {
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(Flux.error(new IllegalStateException("Connection lost")))
+                .thenReturn(Flux.just(OrderItemsEntity.builder().orderId(1L).productId(apple.id()).quantity(1).build()));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .verifyError(IllegalStateException.class);
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(50))
+                .verifyComplete();
+        assertThat(meterRegistry.get("orders.in-flight").gauge().value()).isEqualTo(0.0);
+    }
+
+    @Test
+    void shouldPriceChangedOrderIncrementallyWithoutReadingItAgain() {
+        orderService = newOrderService(new IncrementalRulesProperties(true, 10, Duration.ofMinutes(1)));
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(Flux.just(OrderItemsEntity.builder().orderId(1L).productId(apple.id()).quantity(1).build()));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(orderItemsRepository.addQuantity(1L, apple.id(), 1))
+                .thenReturn(Mono.just(1));
+        when(orderItemsRepository.addQuantities(1L, Map.of(orange.id(), 3)))
+                .thenReturn(Mono.just(1L));
+
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(50))
+                .verifyComplete();
+        orderService.addItemsForOrder(1, apple.id(), 1)
+                .as(StepVerifier::create)
+                .expectNextCount(1)
+                .verifyComplete();
+        orderService.addItemsForOrder(1, List.of(new CartLine(orange.id(), 3)))
+                .as(StepVerifier::create)
+                .expectNextCount(1)
+                .verifyComplete();
+
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> {
+                    assertThat(order.items()).containsExactly(
+                            new LineItem(new Product(50, "apple"), 2, 30, 1),
+                            LineItem.builder().product(new Product(70, "orange")).quantity(3).build(),
+                            new LineItem(new Product(70, "orange"), 1, 100, 1)
+                    );
+                    assertThat(order.getOrderTotal()).isEqualTo(295);
+                })
+                .verifyComplete();
+        verify(orderItemsRepository, times(1)).findAll(any(Example.class));
+        assertThat(meterRegistry.get("rules.incremental.updates").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void shouldWriteBufferedAddsOnceBeforeReadingOrder() {
+        orderService = newOrderService(new IncrementalRulesProperties(false, 0, Duration.ofMinutes(1)),
+                new WriteBehindProperties(true, 1000, 10000, Duration.ofMinutes(1), Duration.ofSeconds(1)));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(orderItemsRepository.addAllQuantities(Map.of(1L, Map.of(apple.id(), 3, orange.id(), 2))))
+                .thenReturn(Mono.just(2L));
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(Flux.just(
+                        OrderItemsEntity.builder().orderId(1L).productId(apple.id()).quantity(3).build(),
+                        OrderItemsEntity.builder().orderId(1L).productId(orange.id()).quantity(2).build()));
+
+        for (int i = 0; i < 3; i++) {
+            orderService.addItemsForOrder(1, apple.id(), 1)
+                    .as(StepVerifier::create)
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+        orderService.addItemsForOrder(1, List.of(new CartLine(orange.id(), 2)))
+                .as(StepVerifier::create)
+                .expectNextCount(1)
+                .verifyComplete();
+
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.getOrderTotal()).isEqualTo(275))
+                .verifyComplete();
+        verify(orderItemsRepository, times(1)).addAllQuantities(any());
+        verify(orderItemsRepository, never()).addQuantity(anyLong(), anyLong(), anyInt());
+        assertThat(meterRegistry.get("orders.write-behind.coalesced").counter().count()).isEqualTo(2.0);
+    }
+
     @Test
     void shouldApplyAppleRule() {
         OrderItemsEntity apples = OrderItemsEntity.builder()
@@ -209,14 +499,11 @@ class OrderServiceTest {
                 .quantity(2)
                 .build();
         Order order = new Order(1, Arrays.asList(
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(0).build(),
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(30).build()
+                new LineItem(new Product(apple.price(), apple.name()), 2, 30, 1)
         ));
 
         when(orderItemsRepository.findAll(any(Example.class)))
                 .thenReturn(Flux.just(apples));
-        when(productRepository.findById(apple.id()))
-                .thenReturn(Mono.just(apple));
         when(productRepository.findAll())
                 .thenReturn(Flux.just(apple, orange));
 
@@ -234,15 +521,11 @@ class OrderServiceTest {
                 .quantity(3)
                 .build();
         Order order = new Order(1, Arrays.asList(
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(0).build(),
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(30).build(),
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(0).build()
+                new LineItem(new Product(apple.price(), apple.name()), 3, 30, 1)
         ));
 
         when(orderItemsRepository.findAll(any(Example.class)))
                 .thenReturn(Flux.just(apples));
-        when(productRepository.findById(apple.id()))
-                .thenReturn(Mono.just(apple));
         when(productRepository.findAll())
                 .thenReturn(Flux.just(apple, orange));
 
@@ -260,16 +543,11 @@ class OrderServiceTest {
                 .quantity(4)
                 .build();
         Order order = new Order(1, Arrays.asList(
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(0).build(),
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(30).build(),
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(0).build(),
-                LineItem.builder().product(new Product(apple.price(), apple.name())).discount(30).build()
+                new LineItem(new Product(apple.price(), apple.name()), 4, 30, 2)
         ));
 
         when(orderItemsRepository.findAll(any(Example.class)))
                 .thenReturn(Flux.just(apples));
-        when(productRepository.findById(apple.id()))
-                .thenReturn(Mono.just(apple));
         when(productRepository.findAll())
                 .thenReturn(Flux.just(apple, orange));
 
@@ -287,15 +565,12 @@ class OrderServiceTest {
                 .quantity(2)
                 .build();
         Order order = new Order(1, Arrays.asList(
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(100).build()
+                LineItem.builder().product(new Product(orange.price(), orange.name())).quantity(2).build(),
+                new LineItem(new Product(orange.price(), orange.name()), 1, 100, 1)
         ));
 
         when(orderItemsRepository.findAll(any(Example.class)))
                 .thenReturn(Flux.just(oranges));
-        when(productRepository.findById(orange.id()))
-                .thenReturn(Mono.just(orange));
         when(productRepository.findAll())
                 .thenReturn(Flux.just(apple, orange));
 
@@ -313,16 +588,12 @@ class OrderServiceTest {
                 .quantity(3)
                 .build();
         Order order = new Order(1, Arrays.asList(
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(100).build()
+                LineItem.builder().product(new Product(orange.price(), orange.name())).quantity(3).build(),
+                new LineItem(new Product(orange.price(), orange.name()), 1, 100, 1)
         ));
 
         when(orderItemsRepository.findAll(any(Example.class)))
                 .thenReturn(Flux.just(oranges));
-        when(productRepository.findById(orange.id()))
-                .thenReturn(Mono.just(orange));
         when(productRepository.findAll())
                 .thenReturn(Flux.just(apple, orange));
 
@@ -340,18 +611,12 @@ class OrderServiceTest {
                 .quantity(4)
                 .build();
         Order order = new Order(1, Arrays.asList(
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(0).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(100).build(),
-                LineItem.builder().product(new Product(orange.price(), orange.name())).discount(100).build()
+                LineItem.builder().product(new Product(orange.price(), orange.name())).quantity(4).build(),
+                new LineItem(new Product(orange.price(), orange.name()), 2, 100, 2)
         ));
 
         when(orderItemsRepository.findAll(any(Example.class)))
                 .thenReturn(Flux.just(oranges));
-        when(productRepository.findById(orange.id()))
-                .thenReturn(Mono.just(orange));
         when(productRepository.findAll())
                 .thenReturn(Flux.just(apple, orange));
 
@@ -360,4 +625,233 @@ class OrderServiceTest {
                 .expectNext(order)
                 .verifyComplete();
     }
+
+    @Test
+    void shouldIssueConstantNumberOfQueriesForOrders() {
+        int ordersCount = 1000;
+        List<OrderItemsEntity> orderItems = IntStream.range(0, ordersCount)
+                .boxed()
+                .flatMap(i -> Stream.of(
+                        OrderItemsEntity.builder().orderId((long) i).productId(apple.id()).quantity(1).build(),
+                        OrderItemsEntity.builder().orderId((long) i).productId(orange.id()).quantity(1).build()
+                ))
+                .collect(Collectors.toList());
+
+        when(orderItemsRepository.findAll())
+                .thenReturn(Flux.fromIterable(orderItems));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        orderService.getOrders()
+                .as(StepVerifier::create)
+                .expectNextCount(ordersCount)
+                .verifyComplete();
+
+        verify(orderItemsRepository, times(1)).findAll();
+        verify(productRepository, times(1)).findAll();
+        verify(productRepository, never()).findAllById(anyIterable());
+        verify(productRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void shouldIssueConstantNumberOfQueriesForOrderById() {
+        List<OrderItemsEntity> orderItems = IntStream.range(0, OrderService.ITEMS_PAGE_SIZE * 4)
+                .mapToObj(i -> OrderItemsEntity.builder()
+                        .orderId(1L)
+                        .productId(apple.id())
+                        .quantity(1)
+                        .build())
+                .collect(Collectors.toList());
+
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(Flux.fromIterable(orderItems));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .expectNext(new Order(1, Arrays.asList(
+                        new LineItem(new Product(apple.price(), apple.name()), orderItems.size(), 30, orderItems.size() / 2)
+                )))
+                .verifyComplete();
+
+        verify(orderItemsRepository, times(1)).findAll(any(Example.class));
+        verify(productRepository, times(1)).findAll();
+        verify(productRepository, never()).findAllById(anyIterable());
+        verify(productRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void shouldNotMaterializeOneLineItemPerUnit() {
+        OrderItemsEntity apples = OrderItemsEntity.builder()
+                .orderId(1L)
+                .productId(apple.id())
+                .quantity(1_000_000)
+                .build();
+        OrderItemsEntity oranges = OrderItemsEntity.builder()
+                .orderId(1L)
+                .productId(orange.id())
+                .quantity(1_000_001)
+                .build();
+
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(Flux.just(apples, oranges));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> {
+                    assertThat(order.items()).containsExactly(
+                            new LineItem(new Product(apple.price(), apple.name()), 1_000_000, 30, 500_000),
+                            LineItem.builder().product(new Product(orange.price(), orange.name())).quantity(1_000_001).build(),
+                            new LineItem(new Product(orange.price(), orange.name()), 500_000, 100, 500_000)
+                    );
+                    assertThat(order.getOrderTotal()).isEqualTo(500_000 * 50 + 500_000 * 35 + 1_000_001 * 70);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldMergeRowsOfTheSameProduct() {
+        OrderItemsEntity applesOne = OrderItemsEntity.builder()
+                .orderId(1L)
+                .productId(apple.id())
+                .quantity(1)
+                .build();
+        OrderItemsEntity applesTwo = OrderItemsEntity.builder()
+                .orderId(1L)
+                .productId(apple.id())
+                .quantity(2)
+                .build();
+
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(Flux.just(applesOne, applesTwo));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .expectNext(new Order(1, Arrays.asList(
+                        new LineItem(new Product(apple.price(), apple.name()), 3, 30, 1)
+                )))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldReturnOrdersPageWithNextCursor() {
+        when(orderItemsRepository.findOrdersPage(Long.MIN_VALUE, 2))
+                .thenReturn(Flux.just(orderItem(1L, apple, 1), orderItem(1L, orange, 1), orderItem(3L, apple, 1)));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        orderService.getOrdersPage(null, 2)
+                .as(StepVerifier::create)
+                .assertNext(page -> {
+                    assertThat(page.orders().stream().map(Order::id).toList()).containsExactly(1L, 3L).inOrder();
+                    assertThat(page.nextCursor()).isEqualTo(3L);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldReturnLastOrdersPageWithoutCursor() {
+        when(orderItemsRepository.findOrdersPage(3L, 2))
+                .thenReturn(Flux.just(orderItem(4L, apple, 2)));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        orderService.getOrdersPage(3L, 2)
+                .as(StepVerifier::create)
+                .assertNext(page -> {
+                    assertThat(page.orders()).containsExactly(new Order(4, Arrays.asList(
+                            new LineItem(new Product(apple.price(), apple.name()), 2, 30, 1)
+                    )));
+                    assertThat(page.nextCursor()).isNull();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldRejectOrdersPageSizeOutOfRange() {
+        orderService.getOrdersPage(null, 0)
+                .as(StepVerifier::create)
+                .expectError(PageSizeOutOfRangeException.class)
+                .verify();
+        orderService.getOrdersPage(null, OrderService.MAX_ORDERS_PAGE_SIZE + 1)
+                .as(StepVerifier::create)
+                .expectError(PageSizeOutOfRangeException.class)
+                .verify();
+
+        verify(orderItemsRepository, never()).findOrdersPage(anyLong(), anyInt());
+    }
+
+    @Test
+    void shouldReturnOrderIdsWithoutPricingOrders() {
+        when(orderItemsRepository.findOrderIds(5L, 3))
+                .thenReturn(Flux.just(6L, 7L, 9L));
+
+        orderService.getOrderIds(5L, 3)
+                .as(StepVerifier::create)
+                .expectNext(6L, 7L, 9L)
+                .verifyComplete();
+
+        verify(orderItemsRepository, never()).findAll();
+        verify(productRepository, never()).findAll();
+    }
+
+    @Test
+    void shouldReturnAllOrderIdsWithoutSize() {
+        when(orderItemsRepository.findOrderIds(Long.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(Flux.just(1L, 2L));
+
+        orderService.getOrderIds(null, null)
+                .as(StepVerifier::create)
+                .expectNext(1L, 2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldRejectOrderIdsPageSizeOutOfRange() {
+        orderService.getOrderIds(null, 0)
+                .as(StepVerifier::create)
+                .expectError(PageSizeOutOfRangeException.class)
+                .verify();
+
+        verify(orderItemsRepository, never()).findOrderIds(anyLong(), anyInt());
+    }
+
+    @Test
+    void shouldStreamOrdersOnDemand() {
+        List<OrderItemsEntity> orderItems = IntStream.range(0, 100)
+                .boxed()
+                .flatMap(i -> Stream.of(orderItem((long) i, apple, 1), orderItem((long) i, orange, 2)))
+                .collect(Collectors.toList());
+        AtomicInteger requested = new AtomicInteger();
+
+        when(orderItemsRepository.findOrdersAfter(10L))
+                .thenReturn(Flux.fromIterable(orderItems).doOnRequest(n -> requested.addAndGet((int) Math.min(n, 1000))));
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        orderService.streamOrders(10L)
+                .as(flux -> StepVerifier.create(flux, 1))
+                .assertNext(order -> assertThat(order).isEqualTo(new Order(0, Arrays.asList(
+                        LineItem.builder().product(new Product(apple.price(), apple.name())).quantity(1).build(),
+                        LineItem.builder().product(new Product(orange.price(), orange.name())).quantity(2).build(),
+                        new LineItem(new Product(orange.price(), orange.name()), 1, 100, 1)
+                ))))
+                .thenCancel()
+                .verify();
+
+        assertThat(requested.get()).isLessThan(orderItems.size());
+    }
+
+    private static OrderItemsEntity orderItem(long orderId, ProductEntity product, int quantity) {
+        return OrderItemsEntity.builder()
+                .orderId(orderId)
+                .productId(product.id())
+                .quantity(quantity)
+                .build();
+    }
 }
@@ -0,0 +1,133 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.dexbtyes.shopapp.configuration.OrderCacheProperties;
+import pl.dexbtyes.shopapp.dto.Order;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class PricedOrderCacheTest {
+    MeterRegistry meterRegistry;
+    PricedOrderCache pricedOrderCache;
+    AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pricedOrderCache = new PricedOrderCache(new OrderCacheProperties(100, Duration.ofMinutes(1)), meterRegistry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void shouldLoadOrderOnceUntilItIsInvalidated() {
+        get(1, 1, load(1)).verifyComplete();
+        get(1, 1, load(1)).verifyComplete();
+        assertThat(loads.get()).isEqualTo(1);
+
+        pricedOrderCache.invalidate(1);
+        get(1, 1, load(1)).verifyComplete();
+        assertThat(loads.get()).isEqualTo(2);
+
+        assertThat(gets("hit")).isEqualTo(1.0);
+        assertThat(gets("miss")).isEqualTo(2.0);
+    }
+
+    @Test
+    void shouldNotInvalidateOtherOrders() {
+        get(1, 1, load(1)).verifyComplete();
+        get(2, 1, load(2)).verifyComplete();
+
+        pricedOrderCache.invalidate(2);
+        get(1, 1, load(1)).verifyComplete();
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReloadWhenCatalogChanges() {
+        get(1, 1, load(1)).verifyComplete();
+        get(1, 2, load(1)).verifyComplete();
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReloadAllOrdersAfterInvalidateAll() {
+        Sinks.One<Order> staleRead = Sinks.one();
+        get(1, 1, load(1)).verifyComplete();
+        pricedOrderCache.get(2, 1, staleRead::asMono).subscribe();
+
+        pricedOrderCache.invalidateAll();
+        staleRead.tryEmitValue(new Order(2, new ArrayList<>()));
+        get(1, 1, load(1)).verifyComplete();
+        get(2, 1, load(2)).verifyComplete();
+
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldNotServeReadThatCompletedAfterWrite() {
+        Sinks.One<Order> staleRead = Sinks.one();
+        pricedOrderCache.get(1, 1, staleRead::asMono).subscribe();
+
+        pricedOrderCache.invalidate(1);
+        staleRead.tryEmitValue(new Order(1, new ArrayList<>()));
+        get(1, 1, load(1)).verifyComplete();
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldShareConcurrentLoads() {
+        Sinks.One<Order> read = Sinks.one();
+        AtomicInteger subscriptions = new AtomicInteger();
+        Supplier<Mono<Order>> loader = () -> read.asMono().doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        StepVerifier first = get(1, 1, loader).expectComplete().verifyLater();
+        StepVerifier second = get(1, 1, loader).expectComplete().verifyLater();
+        read.tryEmitValue(new Order(1, new ArrayList<>()));
+
+        first.verify();
+        second.verify();
+        assertThat(subscriptions.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCacheFailedLoads() {
+        pricedOrderCache.get(1, 1, () -> Mono.error(new IllegalArgumentException()))
+                .as(StepVerifier::create)
+                .verifyError(IllegalArgumentException.class);
+        get(1, 1, load(1)).verifyComplete();
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    private StepVerifier.Step<Order> get(long orderId, long catalogVersion, Supplier<Mono<Order>> loader) {
+        return pricedOrderCache.get(orderId, catalogVersion, loader)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.id()).isEqualTo(orderId));
+    }
+
+    private Supplier<Mono<Order>> load(long orderId) {
+        return () -> Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return new Order(orderId, new ArrayList<>());
+        });
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", PricedOrderCache.CACHE_NAME).tag("result", result)
+                .functionCounter().count();
+    }
+}
@@ -0,0 +1,87 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.dexbtyes.shopapp.configuration.PricingProperties;
+import pl.dexbtyes.shopapp.exception.PricingOverloadedException;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class PricingSchedulerTest {
+    MeterRegistry meterRegistry;
+    PricingScheduler pricingScheduler;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pricingScheduler = new PricingScheduler(new PricingProperties(1, 1), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pricingScheduler.shutdown();
+    }
+
+    @Test
+    void shouldPriceOnPricingThread() {
+        pricingScheduler.price(() -> Thread.currentThread().getName())
+                .as(StepVerifier::create)
+                .assertNext(thread -> assertThat(thread).startsWith(PricingScheduler.NAME + "-"))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldRejectWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StepVerifier running = pricingScheduler.price(() -> {
+                    started.countDown();
+                    return awaitRelease(release);
+                })
+                .as(StepVerifier::create)
+                .expectNext(true)
+                .expectComplete()
+                .verifyLater();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        StepVerifier queued = pricingScheduler.price(() -> true)
+                .as(StepVerifier::create)
+                .expectNext(true)
+                .expectComplete()
+                .verifyLater();
+
+        pricingScheduler.price(() -> true)
+                .as(StepVerifier::create)
+                .verifyError(PricingOverloadedException.class);
+        assertThat(gauge("executor.queued")).isEqualTo(1.0);
+        assertThat(meterRegistry.get("pricing.rejected").counter().count()).isEqualTo(1.0);
+
+        release.countDown();
+        running.verify(Duration.ofSeconds(5));
+        queued.verify(Duration.ofSeconds(5));
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertThat(meterRegistry.get("executor").tag("name", PricingScheduler.NAME).timer().count())
+                        .isEqualTo(2));
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("name", PricingScheduler.NAME).gauge().value();
+    }
+
+    private static boolean awaitRelease(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
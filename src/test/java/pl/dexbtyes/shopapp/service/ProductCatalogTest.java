@@ -0,0 +1,136 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.dexbtyes.shopapp.dto.Product;
+import pl.dexbtyes.shopapp.entity.ProductEntity;
+import pl.dexbtyes.shopapp.repository.ProductRepository;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.Set;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProductCatalogTest {
+    @Mock
+    ProductRepository productRepository;
+    MeterRegistry meterRegistry;
+    ProductCatalog productCatalog;
+    ProductEntity apple;
+    ProductEntity orange;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        productCatalog = new ProductCatalog(productRepository, meterRegistry);
+        apple = new ProductEntity(1L, "apple", 50);
+        orange = new ProductEntity(2L, "orange", 70);
+    }
+
+    @Test
+    void shouldLoadSnapshotOnlyOnce() {
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        productCatalog.findById(apple.id())
+                .as(StepVerifier::create)
+                .expectNext(apple)
+                .verifyComplete();
+        productCatalog.findByName("orange")
+                .as(StepVerifier::create)
+                .expectNext(orange)
+                .verifyComplete();
+        productCatalog.snapshot()
+                .as(StepVerifier::create)
+                .assertNext(snapshot -> {
+                    assertThat(snapshot.version()).isEqualTo(1);
+                    assertThat(snapshot.products()).containsExactly(new Product(50, "apple"), new Product(70, "orange"));
+                })
+                .verifyComplete();
+
+        verify(productRepository, times(1)).findAll();
+        assertThat(lookups("hit")).isEqualTo(1.0);
+        assertThat(lookups("miss")).isEqualTo(0.0);
+        assertThat(meterRegistry.get("catalog.refreshes").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFallBackToDatabaseAndRefreshOnMiss() {
+        ProductEntity banana = new ProductEntity(3L, "banana", 30);
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange), Flux.just(apple, orange, banana));
+        when(productRepository.findAllById(anyIterable()))
+                .thenReturn(Flux.just(banana));
+
+        productCatalog.findAllById(Set.of(apple.id(), banana.id()))
+                .as(StepVerifier::create)
+                .assertNext(products -> {
+                    assertThat(products).containsEntry(apple.id(), apple);
+                    assertThat(products).containsEntry(banana.id(), banana);
+                })
+                .verifyComplete();
+        productCatalog.findById(banana.id())
+                .as(StepVerifier::create)
+                .expectNext(banana)
+                .verifyComplete();
+        productCatalog.snapshot()
+                .as(StepVerifier::create)
+                .assertNext(snapshot -> assertThat(snapshot.version()).isEqualTo(2))
+                .verifyComplete();
+
+        verify(productRepository, times(2)).findAll();
+        verify(productRepository, times(1)).findAllById(anyIterable());
+        assertThat(lookups("hit")).isEqualTo(2.0);
+        assertThat(lookups("miss")).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldNotRefreshWhenMissingProductDoesNotExist() {
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+        when(productRepository.findAllById(anyIterable()))
+                .thenReturn(Flux.empty());
+
+        productCatalog.findById(100L)
+                .as(StepVerifier::create)
+                .verifyComplete();
+
+        verify(productRepository, times(1)).findAll();
+        assertThat(lookups("miss")).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldKeepVersionWhenProductsDidNotChange() {
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(apple, orange));
+
+        productCatalog.refresh()
+                .as(StepVerifier::create)
+                .assertNext(snapshot -> assertThat(snapshot.version()).isEqualTo(1))
+                .verifyComplete();
+        productCatalog.refresh()
+                .as(StepVerifier::create)
+                .assertNext(snapshot -> assertThat(snapshot.version()).isEqualTo(1))
+                .verifyComplete();
+
+        verify(productRepository, never()).findAllById(anyIterable());
+        assertThat(meterRegistry.get("catalog.refreshes").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("catalog.products").gauge().value()).isEqualTo(2.0);
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("catalog.lookups").tag("result", result).counter().count();
+    }
+}
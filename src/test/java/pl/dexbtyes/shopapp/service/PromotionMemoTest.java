@@ -0,0 +1,171 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.PromotionMemoProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties.SessionMode;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.awaitility.Awaitility.await;
+
+class PromotionMemoTest {
+    private static final int RANDOM_ORDERS = 2000;
+    private static final int COMPOSITIONS = 5 * 5 * 5;
+    private static final long CATALOG_VERSION = 1;
+    SimpleMeterRegistry meterRegistry;
+    RuleSessions ruleSessions;
+    PromotionMemo promotionMemo;
+    Product apple;
+    Product orange;
+    Product banana;
+    List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ruleSessions = new RuleSessions(
+                OrderRulesEngine.loadRuleBase(OrderRulesEngine.ORDER_CONFIG, OrderRulesEngine.ORDER_MODEL, true),
+                new RulesProperties(SessionMode.NEW, 1, true), meterRegistry);
+        promotionMemo = newMemo(1000, 8);
+        apple = new Product(50, "apple");
+        orange = new Product(70, "orange");
+        banana = new Product(30, "banana");
+        products = List.of(apple, orange, banana);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ruleSessions.shutdown();
+    }
+
+    private PromotionMemo newMemo(long maximumSize, int maximumLines) {
+        return new PromotionMemo(new PromotionMemoProperties(maximumSize, maximumLines), meterRegistry);
+    }
+
+    @Test
+    void shouldPriceLikeUncachedEvaluation() {
+        SplittableRandom random = new SplittableRandom(21);
+
+        for (long orderId = 1; orderId <= RANDOM_ORDERS; orderId++) {
+            List<Product> shuffled = new ArrayList<>(products);
+            for (int i = shuffled.size() - 1; i > 0; i--) {
+                shuffled.set(i, shuffled.set(random.nextInt(i + 1), shuffled.get(i)));
+            }
+            Order cart = new Order(orderId, new ArrayList<>());
+            for (Product product : shuffled) {
+                if (random.nextBoolean()) {
+                    cart.addQuantity(product, 1 + random.nextInt(4));
+                }
+            }
+
+            Order memoized = price(copy(cart));
+            Order uncached = ruleSessions.execute(copy(cart), products);
+            assertWithMessage("order %s", cart)
+                    .that(memoized.items()).containsExactlyElementsIn(uncached.items()).inOrder();
+            assertThat(memoized.getOrderTotal()).isEqualTo(uncached.getOrderTotal());
+        }
+        assertThat(gets("hit")).isAtLeast((double) RANDOM_ORDERS - COMPOSITIONS);
+        assertThat(gets("miss")).isAtMost((double) COMPOSITIONS);
+    }
+
+    @Test
+    void shouldNotShareLineItemsBetweenOrders() {
+        price(order(orange, 4));
+        Order first = price(order(orange, 4));
+        first.items().get(1).setQuantity(1);
+
+        Order second = price(order(orange, 4));
+
+        assertThat(second.items()).containsExactly(new LineItem(orange, 4, 0, 0), new LineItem(orange, 2, 100, 2))
+                .inOrder();
+        assertThat(gets("hit")).isEqualTo(2.0);
+    }
+
+    @Test
+    void shouldEvaluateAgainForAnotherCatalogVersion() {
+        price(order(apple, 2));
+
+        assertThat(promotionMemo.reapply(order(apple, 2), CATALOG_VERSION + 1)).isNull();
+    }
+
+    @Test
+    void shouldEvaluateAgainAfterInvalidateAll() {
+        price(order(apple, 2));
+
+        promotionMemo.invalidateAll();
+
+        assertThat(promotionMemo.reapply(order(apple, 2), CATALOG_VERSION)).isNull();
+    }
+
+    @Test
+    void shouldNotMemoizeCartsOverMaximumLines() {
+        promotionMemo = newMemo(1000, 2);
+        Order cart = order(apple, 2).addQuantity(orange, 2).addQuantity(banana, 2);
+
+        price(copy(cart));
+
+        assertThat(promotionMemo.reapply(copy(cart), CATALOG_VERSION)).isNull();
+    }
+
+    @Test
+    void shouldNotMemoizeResultsThatReplaceLines() {
+        promotionMemo.price(order(apple, 2), CATALOG_VERSION,
+                order -> new Order(order.id(), new ArrayList<>(List.of(new LineItem(apple, 2, 30, 1)))));
+
+        assertThat(promotionMemo.reapply(order(apple, 2), CATALOG_VERSION)).isNull();
+    }
+
+    @Test
+    void shouldEvictCompositionsOverMaximumSize() {
+        meterRegistry = new SimpleMeterRegistry();
+        promotionMemo = newMemo(1, 8);
+
+        for (int quantity = 1; quantity <= 10; quantity++) {
+            price(order(apple, quantity));
+        }
+
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertThat(meterRegistry.get("cache.evictions")
+                        .tag("cache", PromotionMemo.CACHE_NAME)
+                        .functionCounter()
+                        .count()).isAtLeast(9.0));
+        assertThat(price(order(apple, 10)).getOrderTotal()).isEqualTo(425);
+    }
+
+    private Order price(Order order) {
+        Order memoized = promotionMemo.reapply(order, CATALOG_VERSION);
+        if (memoized != null) {
+            return memoized;
+        }
+        return promotionMemo.price(order, CATALOG_VERSION, unpriced -> ruleSessions.execute(unpriced, products));
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", PromotionMemo.CACHE_NAME).tag("result", result)
+                .functionCounter()
+                .count();
+    }
+
+    private static Order order(Product product, int quantity) {
+        return new Order(1, new ArrayList<>()).addQuantity(product, quantity);
+    }
+
+    private static Order copy(Order order) {
+        Order copy = new Order(order.id(), new ArrayList<>());
+        order.items().forEach(item -> copy.addQuantity(item.getProduct(), item.getQuantity()));
+        return copy;
+    }
+}
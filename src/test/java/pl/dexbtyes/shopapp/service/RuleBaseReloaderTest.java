@@ -0,0 +1,176 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Example;
+import org.springframework.http.HttpStatus;
+import pl.dexbtyes.shopapp.configuration.IncrementalRulesProperties;
+import pl.dexbtyes.shopapp.configuration.OrderCacheProperties;
+import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.PricingProperties;
+import pl.dexbtyes.shopapp.configuration.PromotionMemoProperties;
+import pl.dexbtyes.shopapp.configuration.RuleReloadProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties.SessionMode;
+import pl.dexbtyes.shopapp.configuration.WriteBehindProperties;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+import pl.dexbtyes.shopapp.dto.Status;
+import pl.dexbtyes.shopapp.entity.OrderItemsEntity;
+import pl.dexbtyes.shopapp.entity.ProductEntity;
+import pl.dexbtyes.shopapp.exception.RulesRejectedException;
+import pl.dexbtyes.shopapp.repository.OrderItemsRepository;
+import pl.dexbtyes.shopapp.repository.ProductRepository;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RuleBaseReloaderTest {
+    @Mock
+    ProductRepository productRepository;
+    @Mock
+    OrderItemsRepository orderItemsRepository;
+    MeterRegistry meterRegistry;
+    PricingScheduler pricingScheduler;
+    RuleSessions ruleSessions;
+    IncrementalRuleSessions incrementalSessions;
+    PromotionMemo promotionMemo;
+    RuleBaseReloader ruleBaseReloader;
+    OrderService orderService;
+    Runnable beforeMemoInvalidated = () -> {
+    };
+    Product apple;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pricingScheduler = new PricingScheduler(new PricingProperties(1, 16), meterRegistry);
+        RulesProperties rulesProperties = new RulesProperties(SessionMode.POOLED, 1, true);
+        ruleSessions = new RuleSessions(
+                OrderRulesEngine.loadRuleBase(OrderRulesEngine.ORDER_CONFIG, OrderRulesEngine.ORDER_MODEL, true),
+                rulesProperties, meterRegistry);
+        incrementalSessions = new IncrementalRuleSessions(new IncrementalRulesProperties(true, 10, Duration.ofMinutes(1)),
+                rulesProperties, pricingScheduler, meterRegistry);
+        promotionMemo = new PromotionMemo(new PromotionMemoProperties(100, 8), meterRegistry) {
+            @Override
+            public void invalidateAll() {
+                beforeMemoInvalidated.run();
+                super.invalidateAll();
+            }
+        };
+        ProductCatalog productCatalog = new ProductCatalog(productRepository, meterRegistry);
+        PricedOrderCache pricedOrders = new PricedOrderCache(new OrderCacheProperties(100, Duration.ofMinutes(1)),
+                meterRegistry);
+        ruleBaseReloader = new RuleBaseReloader(ruleSessions, productCatalog, pricedOrders, incrementalSessions,
+                promotionMemo, new RuleReloadProperties(true, 50), meterRegistry);
+        orderService = new OrderService(orderItemsRepository, productCatalog, ruleSessions, pricedOrders,
+                pricingScheduler, incrementalSessions, promotionMemo,
+                new OrderItemsWriteBuffer(new WriteBehindProperties(false, 1000, 10000, Duration.ofMillis(100),
+                        Duration.ofSeconds(1)), orderItemsRepository, meterRegistry),
+                meterRegistry);
+        apple = new Product(50, "apple");
+        when(productRepository.findAll())
+                .thenReturn(Flux.just(new ProductEntity(1L, "apple", 50), new ProductEntity(2L, "orange", 70)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        incrementalSessions.shutdown();
+        ruleSessions.shutdown();
+        pricingScheduler.shutdown();
+    }
+
+    @Test
+    void shouldSwapWarmedUpRules() throws IOException {
+        promotionMemo.price(apples(2), 1, order -> order);
+
+        ruleBaseReloader.reload(RuleSessionsTest.appleDiscountRules(50))
+                .as(StepVerifier::create)
+                .expectNext(new Status(HttpStatus.OK.value(), RuleBaseReloader.RULES_ACTIVE.formatted(2)))
+                .verifyComplete();
+
+        assertThat(ruleSessions.execute(apples(2), List.of(apple)).items()).containsExactly(new LineItem(apple, 2, 50, 1));
+        assertThat(incrementalSessions.isEnabled()).isFalse();
+        assertThat(promotionMemo.reapply(apples(2), 1)).isNull();
+        assertThat(meterRegistry.get("rules.reload.compile").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("rules.reload.warmup").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("rules.reload").tag("result", "swapped").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("rules.activations").tag("rule", "Discount every second apple").counter().count())
+                .isEqualTo(1.0);
+        ruleBaseReloader.current()
+                .as(StepVerifier::create)
+                .expectNext(new Status(HttpStatus.OK.value(), RuleBaseReloader.RULES_ACTIVE.formatted(2)))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldPriceSummaryReadRightAfterReloadWithNewRules() throws IOException {
+        when(orderItemsRepository.findAll(any(Example.class)))
+                .thenReturn(Flux.just(OrderItemsEntity.builder().orderId(1L).productId(1L).quantity(2).build()));
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.items()).containsExactly(new LineItem(apple, 2, 30, 1)))
+                .verifyComplete();
+        List<Order> readDuringReload = new ArrayList<>();
+        beforeMemoInvalidated = () -> readDuringReload.add(orderService.getOrderById(1).block());
+
+        ruleBaseReloader.reload(RuleSessionsTest.appleDiscountRules(50))
+                .as(StepVerifier::create)
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertThat(readDuringReload.get(0).items()).containsExactly(new LineItem(apple, 2, 30, 1));
+        orderService.getOrderById(1)
+                .as(StepVerifier::create)
+                .assertNext(order -> assertThat(order.items()).containsExactly(new LineItem(apple, 2, 50, 1)))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldRejectRulesThatDoNotCompile() {
+        ruleBaseReloader.reload("rule \"Broken\" when then discount(); end")
+                .as(StepVerifier::create)
+                .verifyError(RulesRejectedException.class);
+
+        assertRulesKept();
+    }
+
+    @Test
+    void shouldRejectRulesThatFailOnSampleOrders() throws IOException {
+        ruleBaseReloader.reload(RuleSessionsTest.appleDiscountRules(150))
+                .as(StepVerifier::create)
+                .expectErrorSatisfies(error -> assertThat(error).hasMessageThat().contains("cannot be priced"))
+                .verify();
+
+        assertRulesKept();
+    }
+
+    private void assertRulesKept() {
+        assertThat(ruleSessions.getVersion()).isEqualTo(1);
+        assertThat(ruleSessions.execute(apples(2), List.of(apple)).items()).containsExactly(new LineItem(apple, 2, 30, 1));
+        assertThat(incrementalSessions.isEnabled()).isTrue();
+        assertThat(meterRegistry.get("rules.reload").tag("result", "rejected").counter().count()).isEqualTo(1.0);
+    }
+
+    private Order apples(int quantity) {
+        Order order = new Order(1, new ArrayList<>());
+        order.addQuantity(apple, quantity);
+        return order;
+    }
+}
@@ -0,0 +1,147 @@
+package pl.dexbtyes.shopapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.kie.api.KieBase;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import pl.dexbtyes.shopapp.configuration.OrderRulesEngine;
+import pl.dexbtyes.shopapp.configuration.RulesProperties;
+import pl.dexbtyes.shopapp.configuration.RulesProperties.SessionMode;
+import pl.dexbtyes.shopapp.dto.LineItem;
+import pl.dexbtyes.shopapp.dto.Order;
+import pl.dexbtyes.shopapp.dto.Product;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@SpringBootTest(classes = {OrderRulesEngine.class})
+class RuleSessionsTest {
+    @Autowired
+    KieBase kieBase;
+    MeterRegistry meterRegistry;
+    Product apple;
+    Product orange;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        apple = new Product(50, "apple");
+        orange = new Product(70, "orange");
+    }
+
+    @ParameterizedTest
+    @EnumSource(SessionMode.class)
+    void shouldPriceOrdersTheSameWayInEveryMode(SessionMode mode) {
+        RuleSessions ruleSessions = new RuleSessions(kieBase, new RulesProperties(mode, 1, true), meterRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            Order order = ruleSessions.execute(newOrder(4, 3), List.of(apple, orange));
+
+            assertThat(order.items()).containsExactly(
+                    new LineItem(apple, 4, 30, 2),
+                    LineItem.builder().product(orange).quantity(3).build(),
+                    new LineItem(orange, 1, 100, 1)
+            );
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SessionMode.class)
+    void shouldNotLeakFactsBetweenOrders(SessionMode mode) {
+        RuleSessions ruleSessions = new RuleSessions(kieBase, new RulesProperties(mode, 1, true), meterRegistry);
+
+        ruleSessions.execute(newOrder(0, 2), List.of(apple, orange));
+        Order order = ruleSessions.execute(newOrder(1, 0), List.of(apple, orange));
+
+        assertThat(order.items()).containsExactly(LineItem.builder().product(apple).quantity(1).build());
+        assertThat(meterRegistry.get("rules.sessions.in.use").gauge().value()).isEqualTo(0.0);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SessionMode.class)
+    void shouldPublishPerRuleMetrics(SessionMode mode) {
+        RuleSessions ruleSessions = new RuleSessions(kieBase, new RulesProperties(mode, 1, true), meterRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            ruleSessions.execute(newOrder(4, 3), List.of(apple, orange));
+        }
+
+        assertThat(meterRegistry.get("rules.activations").tag("rule", "Free Orange").counter().count()).isEqualTo(3.0);
+        assertThat(meterRegistry.get("rules.activations").tag("rule", "Discount every second apple").counter().count()).isEqualTo(3.0);
+        assertThat(meterRegistry.get("rules.fire").tag("rule", "Explode Cart").timer().count()).isEqualTo(6);
+        assertThat(meterRegistry.get("rules.facts.inserted").tag("rule", "Explode Cart").counter().count()).isEqualTo(6.0);
+        assertThat(meterRegistry.get("rules.facts.inserted").tag("rule", "Free Orange").counter().count()).isEqualTo(3.0);
+        assertThat(meterRegistry.get("rules.facts.inserted").tag("rule", RuleMetricsListener.NO_RULE).counter().count()).isEqualTo(9.0);
+        assertThat(meterRegistry.get("rules.sessions.lifetime").timer().count()).isEqualTo(3);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SessionMode.class)
+    void shouldExecuteOrdersOnSwappedRules(SessionMode mode) throws IOException {
+        RuleSessions ruleSessions = new RuleSessions(kieBase, new RulesProperties(mode, 1, true), meterRegistry);
+        ruleSessions.execute(newOrder(2, 0), List.of(apple, orange));
+
+        long version = ruleSessions.swap(OrderRulesEngine.compileRules(appleDiscountRules(50)));
+
+        for (int i = 0; i < 3; i++) {
+            Order order = ruleSessions.execute(newOrder(2, 0), List.of(apple, orange));
+            assertThat(order.items()).containsExactly(new LineItem(apple, 2, 50, 1));
+        }
+        assertThat(version).isEqualTo(2);
+        assertThat(ruleSessions.getVersion()).isEqualTo(2);
+        assertThat(meterRegistry.get("rules.version").gauge().value()).isEqualTo(2.0);
+        assertThat(meterRegistry.get("rules.sessions.in.use").gauge().value()).isEqualTo(0.0);
+    }
+
+    static String appleDiscountRules(int discount) throws IOException {
+        return new ClassPathResource(OrderRulesEngine.ORDER_CONFIG).getContentAsString(StandardCharsets.UTF_8)
+                .replace("$item.setDiscount(30);", "$item.setDiscount(" + discount + ");");
+    }
+
+    @Test
+    void shouldReusePooledSessions() {
+        RuleSessions ruleSessions = new RuleSessions(kieBase, new RulesProperties(SessionMode.POOLED, 1, true), meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            ruleSessions.execute(newOrder(2, 2), List.of(apple, orange));
+        }
+
+        assertThat(meterRegistry.get("rules.sessions.created").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("rules.sessions.reused").counter().count()).isEqualTo(4.0);
+        assertThat(meterRegistry.get("rules.sessions.pool.size").gauge().value()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("rules.sessions.acquire").timer().count()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldCreateSessionForEveryOrderInNewMode() {
+        RuleSessions ruleSessions = new RuleSessions(kieBase, new RulesProperties(SessionMode.NEW, 1, true), meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            ruleSessions.execute(newOrder(2, 2), List.of(apple, orange));
+        }
+
+        assertThat(meterRegistry.get("rules.sessions.created").counter().count()).isEqualTo(5.0);
+        assertThat(meterRegistry.get("rules.sessions.reused").counter().count()).isEqualTo(0.0);
+    }
+
+    private Order newOrder(int apples, int oranges) {
+        Order order = new Order(1, new ArrayList<>());
+        if (apples > 0) {
+            order.addQuantity(apple, apples);
+        }
+        if (oranges > 0) {
+            order.addQuantity(orange, oranges);
+        }
+        return order;
+    }
+}